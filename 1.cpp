@@ -3,6 +3,7 @@
 #include <vector>
 #include <random>
 #include <iomanip>
+#include "uniform_file.h"
 
 using namespace std;
 
@@ -100,11 +101,14 @@ private:
     double lambda;      // arrival rate (customers per hour)
     double mu;          // service rate per server (customers per hour)
     int maxServers;     // maximum number of servers
+    UniformStream* arrivalInput; // recorded uniforms replacing gen, if set
+    UniformStream* serviceInput;
 
     // Generates exponentially distributed random variables
-    double getExponential(double rate) {
+    double getExponential(double rate, UniformStream* input) {
         uniform_real_distribution<> dis(0.0, 1.0);
-        return -log(1.0 - dis(gen)) / rate;
+        double u = input != nullptr ? input->nextDouble() : dis(gen);
+        return -log(1.0 - u) / rate;
     }
 
     // Returns number of active servers based on current time
@@ -140,13 +144,20 @@ private:
 
 public:
     // Constructor
-    Q2(double l, double m) : lambda(l), mu(m), maxServers(4) {
+    Q2(double l, double m) : lambda(l), mu(m), maxServers(4),
+        arrivalInput(nullptr), serviceInput(nullptr) {
         random_device rd;
         gen.seed(rd());
     }
 
-    // Runs the simulation
-    void runSimulation() {
+    // Draw arrivals and service times from recorded uniforms instead of gen
+    void useInputs(UniformStream* arrivals, UniformStream* service) {
+        arrivalInput = arrivals;
+        serviceInput = service;
+    }
+
+    // Runs the simulation; returns the three period results followed by the entire day
+    vector<PeriodResults> runSimulation() {
         queue<Customer> q;             // queue for waiting customers
         vector<Customer> completedCustomers; // completed customers
         vector<Server> servers(maxServers); // array of servers
@@ -160,7 +171,7 @@ public:
         PeriodResults entireDayResults(SIMULATION_TIME);
 
         double currentTime = 0.0;      // current simulation time
-        double nextArrival = getExponential(lambda); // time of next arrival
+        double nextArrival = getExponential(lambda, arrivalInput); // time of next arrival
         double lastEventTime = currentTime;
         int totalArrivals = 0;
 
@@ -208,7 +219,7 @@ public:
                 if (availableServer != -1) {
                     // Assign to available server
                     customer.serviceStartTime = currentTime;
-                    customer.serviceTime = getExponential(mu);
+                    customer.serviceTime = getExponential(mu, serviceInput);
                     customer.departureTime = currentTime + customer.serviceTime;
                     customer.serverId = availableServer;
 
@@ -220,7 +231,7 @@ public:
                     // Add to queue if no server available
                     q.push(customer);
                 }
-                nextArrival = currentTime + getExponential(lambda);
+                nextArrival = currentTime + getExponential(lambda, arrivalInput);
             }
             else {
                 // Handle departure
@@ -244,7 +255,7 @@ public:
                     int availableServer = findAvailableServer(servers, activeServers);
                     if (availableServer != -1) {
                         nextCustomer.serviceStartTime = currentTime;
-                        nextCustomer.serviceTime = getExponential(mu);
+                        nextCustomer.serviceTime = getExponential(mu, serviceInput);
                         nextCustomer.departureTime = currentTime + nextCustomer.serviceTime;
                         nextCustomer.serverId = availableServer;
 
@@ -270,6 +281,13 @@ public:
             }
         }
 
+        periodResults.push_back(entireDayResults);
+        return periodResults;
+    }
+
+    static void printResults(vector<PeriodResults>& periodResults) {
+        PeriodResults& entireDayResults = periodResults[3];
+
         // Print results
         cout << "\nSimulation Results (with changing servers and infinite queue):" << endl;
         cout << "--------------------------------------------------" << endl;
@@ -315,14 +333,63 @@ public:
 // Analyzes server effect with given parameters
 void analyzeServerEffect(double lambda, double mu) {
     Q2 simulation(lambda, mu);
-    simulation.runSimulation();
+    vector<PeriodResults> results = simulation.runSimulation();
+    Q2::printResults(results);
 }
 
-// Main function
-int main() {
+// Harness mode: runs every replication of a recorded uniforms file and prints
+// machine-readable results and timings for CrossCheck.java
+int runRecorded(long long startedMicros, const char* path, double lambda, double mu) {
+    auto start = chrono::steady_clock::now();
+    UniformFile inputs;
+    if (!inputs.load(path)) {
+        cerr << "Cannot read recorded uniforms from " << path << endl;
+        return 1;
+    }
+    long long loadNanos = elapsedNanos(start);
+
+    Q2 simulation(lambda, mu);
+    vector<vector<double>> metrics(inputs.replications);
+    vector<long> draws(2 * inputs.replications);
+    long long firstHalfNanos = 0;
+    start = chrono::steady_clock::now();
+    for (int r = 0; r < inputs.replications; r++) {
+        if (r == inputs.replications / 2) {
+            firstHalfNanos = elapsedNanos(start);
+        }
+        UniformStream arrivals = inputs.stream(r, ARRIVAL_STREAM);
+        UniformStream service = inputs.stream(r, SERVICE_STREAM);
+        simulation.useInputs(&arrivals, &service);
+        vector<PeriodResults> results = simulation.runSimulation();
+        for (PeriodResults& p : results) {
+            metrics[r].push_back(p.getAvgWaitingTime());
+            metrics[r].push_back(p.getAvgSystemTime());
+            metrics[r].push_back(p.totalBusyTime);
+            metrics[r].push_back(p.getAvgQueueLength());
+            metrics[r].push_back(p.getProbAllBusy());
+        }
+        draws[2 * r] = arrivals.used;
+        draws[2 * r + 1] = service.used;
+    }
+    long long computeNanos = elapsedNanos(start);
+
+    for (int r = 0; r < inputs.replications; r++) {
+        printReplication(r, draws[2 * r], draws[2 * r + 1], metrics[r]);
+    }
+    printf("time %lld %lld %lld %lld\n", startedMicros, loadNanos, firstHalfNanos, computeNanos - firstHalfNanos);
+    printf("memory %ld\n", peakRssKb());
+    return 0;
+}
+
+// Main function; with a recorded uniforms file as argument, runs in harness mode
+int main(int argc, char* argv[]) {
+    long long startedMicros = epochMicros();
     double lambda = 40.0; // arrival rate
     double mu = 15.0;     // service rate per server
-    
+
+    if (argc > 1) {
+        return runRecorded(startedMicros, argv[1], lambda, mu);
+    }
     analyzeServerEffect(lambda, mu);
     
     return 0;
@@ -3,6 +3,7 @@
 #include <vector>
 #include <random>
 #include <iomanip>
+#include "uniform_file.h"
 
 using namespace std;
 
@@ -42,27 +43,36 @@ private:
     mt19937 gen;     // Mersenne Twister random number generator
     double lambda;   // arrival rate (customers per hour)
     double mu;       // service rate (customers per hour)
+    UniformStream* arrivalInput; // recorded uniforms replacing gen, if set
+    UniformStream* serviceInput;
 
     // Generates exponentially distributed random variables
-    double getExponential(double rate) {
+    double getExponential(double rate, UniformStream* input) {
         uniform_real_distribution<> dis(0.0, 1.0);
-        return -log(1.0 - dis(gen)) / rate;
+        double u = input != nullptr ? input->nextDouble() : dis(gen);
+        return -log(1.0 - u) / rate;
     }
 
 public:
     // Constructor to initialize simulation parameters
-    Q3(double l, double m) : lambda(l), mu(m) {
+    Q3(double l, double m) : lambda(l), mu(m), arrivalInput(nullptr), serviceInput(nullptr) {
         random_device rd;
         gen.seed(rd());
     }
 
+    // Draw arrivals and service times from recorded uniforms instead of gen
+    void useInputs(UniformStream* arrivals, UniformStream* service) {
+        arrivalInput = arrivals;
+        serviceInput = service;
+    }
+
     // Runs a single simulation instance
     SimulationResults runSimulation() {
         queue<Customer> q;              // queue for waiting customers
         vector<Customer> completedCustomers; // completed customers
         
         double currentTime = 0.0;       // current simulation time
-        double nextArrival = getExponential(lambda); // time of next arrival
+        double nextArrival = getExponential(lambda, arrivalInput); // time of next arrival
         double nextDeparture = numeric_limits<double>::max(); // time of next departure
         double busyTime = 0.0;          // total time server is busy
         double queueLengthTimeProduct = 0.0; // for calculating average queue length
@@ -94,12 +104,12 @@ public:
                 if (q.size() == 1) {
                     Customer& c = q.front();
                     c.serviceStartTime = currentTime;
-                    c.serviceTime = getExponential(mu);
+                    c.serviceTime = getExponential(mu, serviceInput);
                     c.departureTime = currentTime + c.serviceTime;
                     nextDeparture = c.departureTime;
                 }
 
-                nextArrival = currentTime + getExponential(lambda);
+                nextArrival = currentTime + getExponential(lambda, arrivalInput);
                 lastEventTime = currentTime;
             }
             // Handle departure event
@@ -121,7 +131,7 @@ public:
                 if (!q.empty()) {
                     Customer& nextCustomer = q.front();
                     nextCustomer.serviceStartTime = currentTime;
-                    nextCustomer.serviceTime = getExponential(mu);
+                    nextCustomer.serviceTime = getExponential(mu, serviceInput);
                     nextCustomer.departureTime = currentTime + nextCustomer.serviceTime;
                     nextDeparture = nextCustomer.departureTime;
                 }
@@ -150,7 +160,7 @@ public:
             if (!q.empty()) {
                 Customer& nextCustomer = q.front();
                 nextCustomer.serviceStartTime = currentTime;
-                nextCustomer.serviceTime = getExponential(mu);
+                nextCustomer.serviceTime = getExponential(mu, serviceInput);
                 nextCustomer.departureTime = currentTime + nextCustomer.serviceTime;
                 nextDeparture = nextCustomer.departureTime;
             }
@@ -257,11 +267,57 @@ void runSimulationAnalysis(double lambda, double mu) {
          << setw(15) << P0 << endl;
 }
 
-// Main function to run the analysis
-int main() {
+
+// Harness mode: runs every replication of a recorded uniforms file and prints
+// machine-readable results and timings for CrossCheck.java
+int runRecorded(long long startedMicros, const char* path, double lambda, double mu) {
+    auto start = chrono::steady_clock::now();
+    UniformFile inputs;
+    if (!inputs.load(path)) {
+        cerr << "Cannot read recorded uniforms from " << path << endl;
+        return 1;
+    }
+    long long loadNanos = elapsedNanos(start);
+
+    Q3 simulation(lambda, mu);
+    vector<vector<double>> metrics(inputs.replications);
+    vector<long> draws(2 * inputs.replications);
+    long long firstHalfNanos = 0;
+    start = chrono::steady_clock::now();
+    for (int r = 0; r < inputs.replications; r++) {
+        if (r == inputs.replications / 2) {
+            firstHalfNanos = elapsedNanos(start);
+        }
+        UniformStream arrivals = inputs.stream(r, ARRIVAL_STREAM);
+        UniformStream service = inputs.stream(r, SERVICE_STREAM);
+        simulation.useInputs(&arrivals, &service);
+        SimulationResults results = simulation.runSimulation();
+        metrics[r] = {results.avgWaitingTime, results.avgSystemTime, results.utilizationFactor,
+                      results.idleTimeFraction, results.avgQueueLength,
+                      static_cast<double>(results.maxQueueLength), results.emptyQueueProbability};
+        draws[2 * r] = arrivals.used;
+        draws[2 * r + 1] = service.used;
+    }
+    long long computeNanos = elapsedNanos(start);
+
+    for (int r = 0; r < inputs.replications; r++) {
+        printReplication(r, draws[2 * r], draws[2 * r + 1], metrics[r]);
+    }
+    printf("time %lld %lld %lld %lld\n", startedMicros, loadNanos, firstHalfNanos, computeNanos - firstHalfNanos);
+    printf("memory %ld\n", peakRssKb());
+    return 0;
+}
+
+// Main function to run the analysis; with a recorded uniforms file as argument, runs
+// in harness mode
+int main(int argc, char* argv[]) {
+    long long startedMicros = epochMicros();
     double lambda = 10.0; // arrival rate (customers per hour)
     double mu = 15.0;     // service rate (customers per hour)
-    
+
+    if (argc > 1) {
+        return runRecorded(startedMicros, argv[1], lambda, mu);
+    }
     runSimulationAnalysis(lambda, mu);
     
     return 0;
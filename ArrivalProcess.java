@@ -0,0 +1,346 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+
+// Arrival times of a Poisson process whose rate may vary over the day (Q1). A process
+// keeps a pointer to the rate segment of the last arrival, so it belongs to one
+// simulation at a time; reset() starts a new replication.
+interface ArrivalProcess {
+
+    // Time of the first arrival after `time`
+    double next(double time, Random source);
+
+    void reset();
+
+    // The homogeneous process; same draws as Q1's original getExponential
+    static ArrivalProcess constant(double lambda) {
+        return new Constant(lambda);
+    }
+
+    // Rate rates[i] from breakpoints[i] to the next breakpoint, the last rate from the last
+    // breakpoint on, and zero before the first
+    static ArrivalProcess piecewise(double[] breakpoints, double[] rates) {
+        return new PiecewiseConstant(breakpoints, rates);
+    }
+
+    // Smooth rate on [start, end), zero outside, generated by thinning under a
+    // piecewise-constant majorant refined until at most `maxRejection` of the candidates
+    // are expected to be rejected
+    static ArrivalProcess smooth(DoubleUnaryOperator rate, double start, double end, double maxRejection) {
+        return Thinning.create(rate, start, end, maxRejection);
+    }
+
+    class Constant implements ArrivalProcess {
+        private final double lambda;
+
+        Constant(double lambda) {
+            this.lambda = lambda;
+        }
+
+        public double next(double time, Random source) {
+            return time + -Math.log(1.0 - source.nextDouble()) / lambda;
+        }
+
+        public void reset() {
+        }
+    }
+
+    // Exact inversion of the cumulative rate: the next arrival is where the cumulative
+    // rate has grown by a unit exponential past its value now. Cumulative values at the
+    // breakpoints are precomputed, and the segment pointer only moves forward between
+    // arrivals, galloping (steps of 1, 2, 4, ... then a binary search), so skipping k
+    // segments costs O(log k) and fine profiles with thousands of segments stay cheap.
+    class PiecewiseConstant implements ArrivalProcess {
+        private final double[] breakpoints;
+        private final double[] rates;
+        private final double[] cumulative; // integrated rate up to each breakpoint
+        private int segment;
+
+        PiecewiseConstant(double[] breakpoints, double[] rates) {
+            if (breakpoints.length != rates.length || rates.length == 0) {
+                throw new IllegalArgumentException("Need one rate per breakpoint");
+            }
+            this.breakpoints = breakpoints;
+            this.rates = rates;
+            this.cumulative = new double[rates.length];
+            for (int i = 0; i < rates.length; i++) {
+                if (rates[i] < 0 || (i > 0 && breakpoints[i] < breakpoints[i - 1])) {
+                    throw new IllegalArgumentException("Rates must be non-negative and breakpoints increasing");
+                }
+                if (i > 0) {
+                    cumulative[i] = cumulative[i - 1] + rates[i - 1] * (breakpoints[i] - breakpoints[i - 1]);
+                }
+            }
+        }
+
+        public double next(double time, Random source) {
+            if (segment > 0 && time < breakpoints[segment]) {
+                // not a later time than the last call: find the segment afresh
+                int found = Arrays.binarySearch(breakpoints, time);
+                segment = Math.max(found >= 0 ? found : -found - 2, 0);
+            }
+            segment = gallop(breakpoints, segment, time, false);
+            double from = Math.max(time, breakpoints[segment]);
+            double target = cumulative[segment] + rates[segment] * (from - breakpoints[segment])
+                    - Math.log(1.0 - source.nextDouble());
+            segment = gallop(cumulative, segment, target, true);
+            if (rates[segment] == 0.0) {
+                return Double.MAX_VALUE; // no arrivals after the last breakpoint
+            }
+            return breakpoints[segment] + (target - cumulative[segment]) / rates[segment];
+        }
+
+        public void reset() {
+            segment = 0;
+        }
+
+        // Last index from `from` on whose key is at most `value` (below it if strict);
+        // keys are non-decreasing and keys[from] qualifies or from is 0
+        private static int gallop(double[] keys, int from, double value, boolean strict) {
+            int last = keys.length - 1;
+            int step = 1;
+            while (from + step <= last && (strict ? keys[from + step] < value : keys[from + step] <= value)) {
+                from += step;
+                step *= 2;
+            }
+            int high = Math.min(from + step, last + 1); // first index known not to qualify, or past the end
+            while (high - from > 1) {
+                int middle = (from + high) >>> 1;
+                if (strict ? keys[middle] < value : keys[middle] <= value) {
+                    from = middle;
+                } else {
+                    high = middle;
+                }
+            }
+            return from;
+        }
+
+        // rate of the segment holding the last arrival returned
+        double currentRate() {
+            return rates[segment];
+        }
+    }
+
+    // Lewis-Shedler thinning: candidates come from the majorant by exact inversion and are
+    // kept with probability rate / majorant. The majorant is adaptive: each segment's bound
+    // is the largest of 17 evenly spaced samples of the rate plus the largest step between
+    // neighbouring samples, and the segment with the most area between bound and rate is
+    // halved until that area is at most maxRejection of the majorant's.
+    class Thinning implements ArrivalProcess {
+        private static final int SAMPLES = 17;
+        private static final int MAX_SEGMENTS = 1 << 16;
+
+        private final DoubleUnaryOperator rate;
+        private final PiecewiseConstant majorant;
+        private final double expectedRejection;
+        private long candidates;
+        private long accepted;
+
+        private Thinning(DoubleUnaryOperator rate, PiecewiseConstant majorant, double expectedRejection) {
+            this.rate = rate;
+            this.majorant = majorant;
+            this.expectedRejection = expectedRejection;
+        }
+
+        // segment of the majorant under construction
+        private static final class Piece {
+            final double start;
+            final double end;
+            final double bound;
+            final double area; // integral of the rate, trapezoidal over the samples
+
+            Piece(DoubleUnaryOperator rate, double start, double end) {
+                this.start = start;
+                this.end = end;
+                double max = 0.0;
+                double step = 0.0;
+                double sum = 0.0;
+                double previous = 0.0;
+                for (int i = 0; i < SAMPLES; i++) {
+                    double time = start + (end - start) * i / (SAMPLES - 1);
+                    double value = rate.applyAsDouble(time);
+                    if (value < 0) {
+                        throw new IllegalArgumentException("Negative rate at " + time);
+                    }
+                    max = Math.max(max, value);
+                    if (i > 0) {
+                        step = Math.max(step, Math.abs(value - previous));
+                        sum += (value + previous) / 2;
+                    }
+                    previous = value;
+                }
+                this.bound = max + step;
+                this.area = sum / (SAMPLES - 1) * (end - start);
+            }
+
+            double excess() {
+                return bound * (end - start) - area;
+            }
+        }
+
+        static Thinning create(DoubleUnaryOperator rate, double start, double end, double maxRejection) {
+            PriorityQueue<Piece> pieces = new PriorityQueue<>((a, b) -> Double.compare(b.excess(), a.excess()));
+            pieces.add(new Piece(rate, start, end));
+            double excess = pieces.peek().excess();
+            double majorantArea = excess + pieces.peek().area;
+            while (excess > maxRejection * majorantArea && pieces.size() < MAX_SEGMENTS) {
+                Piece worst = pieces.poll();
+                double middle = (worst.start + worst.end) / 2;
+                Piece left = new Piece(rate, worst.start, middle);
+                Piece right = new Piece(rate, middle, worst.end);
+                pieces.add(left);
+                pieces.add(right);
+                excess += left.excess() + right.excess() - worst.excess();
+                majorantArea += left.excess() + left.area + right.excess() + right.area
+                        - worst.excess() - worst.area;
+            }
+
+            ArrayList<Piece> sorted = new ArrayList<>(pieces);
+            sorted.sort((a, b) -> Double.compare(a.start, b.start));
+            double[] breakpoints = new double[sorted.size() + 1];
+            double[] bounds = new double[sorted.size() + 1]; // the last stays zero
+            for (int i = 0; i < sorted.size(); i++) {
+                breakpoints[i] = sorted.get(i).start;
+                bounds[i] = sorted.get(i).bound;
+            }
+            breakpoints[sorted.size()] = end; // zero rate from here on
+            return new Thinning(rate, new PiecewiseConstant(breakpoints, bounds), excess / majorantArea);
+        }
+
+        public double next(double time, Random source) {
+            while (true) {
+                time = majorant.next(time, source);
+                if (time == Double.MAX_VALUE) {
+                    return time;
+                }
+                candidates++;
+                double value = rate.applyAsDouble(time);
+                double bound = majorant.currentRate();
+                if (value > bound) {
+                    throw new IllegalStateException("Rate " + value + " above its majorant " + bound + " at " + time);
+                }
+                if (source.nextDouble() * bound < value) {
+                    accepted++;
+                    return time;
+                }
+            }
+        }
+
+        public void reset() {
+            majorant.reset();
+        }
+
+        int segments() {
+            return majorant.rates.length - 1;
+        }
+
+        double expectedRejection() {
+            return expectedRejection;
+        }
+
+        // fraction of candidates rejected so far
+        double rejection() {
+            return candidates > 0 ? 1.0 - (double) accepted / candidates : 0.0;
+        }
+    }
+
+    // Demand in customers per hour over Q1's day: morning and afternoon peaks around 40
+    static double demand(double time) {
+        return 25.0 + 30.0 * Math.exp(-Math.pow((time - 1.5) / 0.8, 2)) + 20.0 * Math.exp(-Math.pow((time - 6.0) / 1.0, 2));
+    }
+
+    // Per-minute (or finer) piecewise-constant version of `demand`, each segment at the
+    // demand's mean over it; the last rate continues after closing
+    static ArrivalProcess demandProfile(int segments) {
+        double[] breakpoints = new double[segments];
+        double[] rates = new double[segments];
+        double width = Q1.SIMULATION_TIME / segments;
+        for (int i = 0; i < segments; i++) {
+            breakpoints[i] = i * width;
+            double sum = 0.0;
+            for (int k = 0; k < 8; k++) {
+                sum += demand(breakpoints[i] + (k + 0.5) * width / 8);
+            }
+            rates[i] = sum / 8;
+        }
+        return piecewise(breakpoints, rates);
+    }
+
+    // Hourly arrival counts of each generator against the integrated demand (z per hour
+    // over many days), the cost per arrival, and Q1 run on the demand curve
+    public static void main(String[] args) {
+        int days = 20000;
+        int hours = (int) Q1.SIMULATION_TIME;
+        System.out.println("Seed: " + RngStreams.defaultSeed());
+        RngStreams streams = RngStreams.defaultStreams();
+
+        double[] expected = new double[hours];
+        for (int h = 0; h < hours; h++) {
+            for (int k = 0; k < 10000; k++) {
+                expected[h] += demand(h + (k + 0.5) / 10000) / 10000;
+            }
+        }
+
+        String[] names = {"Per minute", "Per second", "Thinning"};
+        ArrivalProcess[] processes = {
+            demandProfile(hours * 60), demandProfile(hours * 3600),
+            smooth(ArrivalProcess::demand, 0.0, Q1.SIMULATION_TIME, 0.02)
+        };
+        System.out.println("\nHourly arrivals over " + days + " days (z against the integrated demand):");
+        System.out.println("--------------------------------------------------");
+        System.out.printf("%-10s %-15s", "Hour", "Expected");
+        for (String name : names) {
+            System.out.printf(" %-15s %-8s", name, "z");
+        }
+        System.out.println();
+
+        long[][] counts = new long[processes.length][hours];
+        double[][] countSquares = new double[processes.length][hours];
+        long[] arrivals = new long[processes.length];
+        long[] elapsed = new long[processes.length];
+        for (int p = 0; p < processes.length; p++) {
+            for (int day = 0; day < days; day++) {
+                Random source = streams.stream(day, RngStreams.ARRIVALS);
+                int[] dayCounts = new int[hours];
+                processes[p].reset();
+                long start = System.nanoTime();
+                double time = processes[p].next(0.0, source);
+                while (time < Q1.SIMULATION_TIME) {
+                    dayCounts[(int) time]++;
+                    arrivals[p]++;
+                    time = processes[p].next(time, source);
+                }
+                elapsed[p] += System.nanoTime() - start;
+                for (int h = 0; h < hours; h++) {
+                    counts[p][h] += dayCounts[h];
+                    countSquares[p][h] += (double) dayCounts[h] * dayCounts[h];
+                }
+            }
+        }
+        for (int h = 0; h < hours; h++) {
+            System.out.printf("%-10s %-15.4f", h + "-" + (h + 1), expected[h]);
+            for (int p = 0; p < processes.length; p++) {
+                double mean = (double) counts[p][h] / days;
+                double variance = (countSquares[p][h] / days - mean * mean) * days / (days - 1);
+                System.out.printf(" %-15.4f %-8.2f", mean, (mean - expected[h]) / Math.sqrt(variance / days));
+            }
+            System.out.println();
+        }
+        System.out.printf("%-26s", "ns per arrival");
+        for (int p = 0; p < processes.length; p++) {
+            System.out.printf(" %-24.1f", (double) elapsed[p] / arrivals[p]);
+        }
+        System.out.println();
+        Thinning thinning = (Thinning) processes[2];
+        System.out.printf("%nThinning: %d majorant segments, %.2f%% of candidates rejected (%.2f%% expected)%n",
+                thinning.segments(), 100 * thinning.rejection(), 100 * thinning.expectedRejection());
+        System.out.printf("Exact inversion: no candidates are rejected%n");
+
+        Q1 simulation = new Q1(40.0, 15.0);
+        simulation.setArrivalProcess(demandProfile(hours * 60));
+        System.out.println("\nQ1 with the per-minute demand profile:");
+        Q1.printResults(simulation.runSimulation(0, null));
+    }
+}
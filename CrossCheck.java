@@ -0,0 +1,410 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Runs the Java models and their C++ counterparts (1.cpp, 2.cpp, 3.cpp) on the same
+// recorded uniforms and checks that every replication agrees to floating-point
+// tolerance. It also compares throughput, startup and peak memory. Both implementations
+// run as separate processes in the same harness mode, so everything is measured the
+// same way. Events are counted as random draws, i.e. arrivals plus service starts.
+// Draw counts may differ without affecting results: Java Q2 draws service times on
+// admission rather than at service start, and 3.cpp draws one interarrival time past
+// the last arrival; each stream is still consumed in the same order. So draw counts are
+// only compared for Q1, where they must match.
+//
+// Recorded uniforms file (little-endian, read by uniform_file.h): "QUF1", int
+// replications, int streams per replication, int values per stream, then the values
+// as doubles, replication-major. Stream 0 feeds arrivals and stream 1 service times.
+public class CrossCheck {
+    private static final double TOLERANCE = 1e-9;       // relative, on top of an absolute 1e-12
+    private static final double BEHIND = 0.5;           // flag Java below this share of C++ throughput
+    private static final int STREAMS = 2;
+
+    // One model as run by both implementations
+    static class Model {
+        final String name;
+        final String source;       // C++ counterpart
+        final String[] cppArgs;    // after the uniforms file
+        final int replications;
+        final int valuesPerStream; // enough draws per stream for any replication
+        final String[] metrics;
+        final boolean sameDraws;   // whether both take the same number of draws per replication
+
+        Model(String name, String source, String[] cppArgs, int replications, int valuesPerStream, String[] metrics,
+              boolean sameDraws) {
+            this.name = name;
+            this.source = source;
+            this.cppArgs = cppArgs;
+            this.replications = replications;
+            this.valuesPerStream = valuesPerStream;
+            this.metrics = metrics;
+            this.sameDraws = sameDraws;
+        }
+    }
+
+    private static final int Q2_CAPACITY = 7;
+
+    private static final Model[] MODELS = {
+        // 320 arrivals a day on average; interrupted customers draw their service again
+        new Model("Q1", "1.cpp", new String[0], 2000, 1000, q1Metrics(), true),
+        // about 20000 arrivals in 1000 hours, standard deviation 141
+        new Model("Q2", "2.cpp", new String[] {String.valueOf(Q2_CAPACITY)}, 100, 21000, new String[] {
+            "Avg Wait Time", "Avg Sys Time", "Utilization", "Avg Queue Len", "P(System Full)", "P(Rejection)"}, false),
+        // 500 arrivals; 3.cpp draws one more interarrival time after the last one
+        new Model("Q3", "3.cpp", new String[0], 2000, 501, new String[] {
+            "Avg Wait Time", "Avg Sys Time", "Utilization", "Idle Fraction", "Avg Queue Len", "Max Queue Len",
+            "P(Empty Queue)"}, false),
+    };
+
+    private static String[] q1Metrics() {
+        String[] periods = {"0-2h", "2-5h", "5-8h", "day"};
+        String[] measures = {"Avg Wait Time", "Avg Sys Time", "Busy Time", "Avg Queue Len", "P(All Busy)"};
+        String[] names = new String[periods.length * measures.length];
+        for (int p = 0; p < periods.length; p++) {
+            for (int m = 0; m < measures.length; m++) {
+                names[p * measures.length + m] = periods[p] + " " + measures[m];
+            }
+        }
+        return names;
+    }
+
+    // Replays one recorded stream as a Random
+    static final class RecordedStream extends Random {
+        private static final long serialVersionUID = 1L;
+        private final double[] values;
+        private final int end;
+        private int next;
+
+        RecordedStream(double[] values, int begin, int end) {
+            super(0L);
+            this.values = values;
+            this.next = begin;
+            this.end = end;
+        }
+
+        @Override
+        public double nextDouble() {
+            if (next == end) {
+                throw new IllegalStateException("Recorded uniforms exhausted");
+            }
+            return values[next++];
+        }
+
+        @Override
+        protected int next(int bits) {
+            return (int) (long) (nextDouble() * 4294967296.0) >>> (32 - bits);
+        }
+
+        long used(int begin) {
+            return next - begin;
+        }
+    }
+
+    // Streams backed by a recorded uniforms file; purposes without a recorded stream get
+    // an empty one, which fails if it is ever drawn from
+    static final class RecordedStreams extends RngStreams {
+        private final double[] values;
+        private final int valuesPerStream;
+        private final RecordedStream[] last = new RecordedStream[STREAMS];
+
+        RecordedStreams(double[] values, int valuesPerStream) {
+            super(0L);
+            this.values = values;
+            this.valuesPerStream = valuesPerStream;
+        }
+
+        @Override
+        Random stream(long replication, int purpose) {
+            if (purpose >= STREAMS) {
+                return new RecordedStream(values, 0, 0);
+            }
+            int begin = (int) ((replication * STREAMS + purpose) * valuesPerStream);
+            last[purpose] = new RecordedStream(values, begin, begin + valuesPerStream);
+            return last[purpose];
+        }
+
+        // draws taken from the latest stream of a purpose in `replication`
+        long used(long replication, int purpose) {
+            return last[purpose].used((int) ((replication * STREAMS + purpose) * valuesPerStream));
+        }
+    }
+
+    // Output of one implementation's harness-mode run
+    static class Run {
+        double[][] metrics;
+        long[][] draws;      // per replication: arrival draws, service draws
+        long startupMicros;  // process launch to entering main
+        long loadNanos;
+        long firstHalfNanos;
+        long secondHalfNanos;
+        long peakRssKb;
+
+        long events(int fromReplication) {
+            long events = 0;
+            for (int r = fromReplication; r < draws.length; r++) {
+                events += draws[r][0] + draws[r][1];
+            }
+            return events;
+        }
+
+        double eventsPerSecond() {
+            return events(0) / ((firstHalfNanos + secondHalfNanos) / 1e9);
+        }
+
+        // second half only, after the JIT has warmed up
+        double steadyEventsPerSecond() {
+            return events(draws.length / 2) / (secondHalfNanos / 1e9);
+        }
+
+        double startupMillis() {
+            return startupMicros / 1e3;
+        }
+    }
+
+    static void writeUniforms(File file, RngStreams streams, int replications, int valuesPerStream) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.put("QUF1".getBytes("US-ASCII")).putInt(replications).putInt(STREAMS).putInt(valuesPerStream);
+            for (int r = 0; r < replications; r++) {
+                for (int purpose = 0; purpose < STREAMS; purpose++) {
+                    Random stream = streams.stream(r, purpose);
+                    for (int i = 0; i < valuesPerStream; i++) {
+                        if (buffer.remaining() < 8) {
+                            buffer.flip();
+                            channel.write(buffer);
+                            buffer.clear();
+                        }
+                        buffer.putDouble(stream.nextDouble());
+                    }
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    // Harness mode of the Java side, same output format as the C++ runRecorded
+    static void runRecorded(long startedMicros, String modelName, File file) throws IOException {
+        long start = System.nanoTime();
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[4];
+        bytes.get(magic);
+        if (!"QUF1".equals(new String(magic, "US-ASCII"))) {
+            throw new IOException("Not a recorded uniforms file: " + file);
+        }
+        int replications = bytes.getInt();
+        bytes.getInt(); // streams per replication
+        int valuesPerStream = bytes.getInt();
+        double[] values = new double[replications * STREAMS * valuesPerStream];
+        bytes.asDoubleBuffer().get(values);
+        long loadNanos = System.nanoTime() - start;
+
+        RecordedStreams streams = new RecordedStreams(values, valuesPerStream);
+        Q1 q1 = new Q1(40.0, 15.0, streams);
+        Q2 q2 = new Q2(20.0, 24.0, Q2_CAPACITY, QueueDiscipline.Type.FIFO, new double[] {1.0}, streams);
+        Q3 q3 = new Q3(10.0, 15.0, QueueDiscipline.Type.FIFO, new double[] {1.0}, streams);
+        double[][] metrics = new double[replications][];
+        long[][] draws = new long[replications][];
+        long firstHalfNanos = 0;
+        start = System.nanoTime();
+        for (int r = 0; r < replications; r++) {
+            if (r == replications / 2) {
+                firstHalfNanos = System.nanoTime() - start;
+            }
+            if (modelName.equals("Q1")) {
+                Q1.PeriodResults[] results = q1.runSimulation(r, null);
+                metrics[r] = new double[results.length * 5];
+                for (int p = 0; p < results.length; p++) {
+                    metrics[r][5 * p] = results[p].getAvgWaitingTime();
+                    metrics[r][5 * p + 1] = results[p].getAvgSystemTime();
+                    metrics[r][5 * p + 2] = results[p].totalBusyTime;
+                    metrics[r][5 * p + 3] = results[p].getAvgQueueLength();
+                    metrics[r][5 * p + 4] = results[p].getProbAllBusy();
+                }
+            } else if (modelName.equals("Q2")) {
+                Q2.SimulationResults results = q2.runSimulation(r);
+                metrics[r] = new double[] {results.avgWaitingTime, results.avgSystemTime, results.utilizationRate,
+                        results.avgQueueLength, results.probSystemFull, results.probRejection};
+            } else {
+                Q3.SimulationResults results = q3.runSimulation(r);
+                metrics[r] = new double[] {results.avgWaitingTime, results.avgSystemTime, results.utilizationFactor,
+                        results.idleTimeFraction, results.avgQueueLength, results.maxQueueLength,
+                        results.emptyQueueProbability};
+            }
+            draws[r] = new long[] {streams.used(r, RngStreams.ARRIVALS), streams.used(r, RngStreams.SERVICE)};
+        }
+        long computeNanos = System.nanoTime() - start;
+
+        StringBuilder out = new StringBuilder();
+        for (int r = 0; r < replications; r++) {
+            out.append("rep ").append(r).append(' ').append(draws[r][0]).append(' ').append(draws[r][1]);
+            for (double value : metrics[r]) {
+                out.append(' ').append(value);
+            }
+            out.append('\n');
+        }
+        out.append("time ").append(startedMicros).append(' ').append(loadNanos).append(' ').append(firstHalfNanos).append(' ')
+                .append(computeNanos - firstHalfNanos).append('\n');
+        out.append("memory ").append(peakRssKb()).append('\n');
+        System.out.print(out);
+    }
+
+    // Peak resident set size in kB, or -1 where /proc is not available
+    private static long peakRssKb() {
+        try {
+            for (String line : Files.readAllLines(new File("/proc/self/status").toPath())) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring(6).replace("kB", "").trim());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // not Linux
+        }
+        return -1;
+    }
+
+    // Runs one harness-mode process and parses its output
+    static Run launch(List<String> command, int replications) throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT);
+        long launchedMicros = System.currentTimeMillis() * 1000;
+        Process process = builder.start();
+        Run run = new Run();
+        run.metrics = new double[replications][];
+        run.draws = new long[replications][];
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), "US-ASCII"))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split(" ");
+                if (fields[0].equals("rep")) {
+                    int r = Integer.parseInt(fields[1]);
+                    run.draws[r] = new long[] {Long.parseLong(fields[2]), Long.parseLong(fields[3])};
+                    run.metrics[r] = new double[fields.length - 4];
+                    for (int i = 4; i < fields.length; i++) {
+                        run.metrics[r][i - 4] = Double.parseDouble(fields[i]);
+                    }
+                } else if (fields[0].equals("time")) {
+                    run.startupMicros = Long.parseLong(fields[1]) - launchedMicros;
+                    run.loadNanos = Long.parseLong(fields[2]);
+                    run.firstHalfNanos = Long.parseLong(fields[3]);
+                    run.secondHalfNanos = Long.parseLong(fields[4]);
+                } else if (fields[0].equals("memory")) {
+                    run.peakRssKb = Long.parseLong(fields[1]);
+                }
+            }
+        }
+        int exit = process.waitFor();
+        if (exit != 0) {
+            throw new IOException(command.get(0) + " exited with status " + exit);
+        }
+        return run;
+    }
+
+    private static void compile(File source, File binary) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("cxx", "g++"));
+        command.addAll(Arrays.asList(System.getProperty("cxxflags", "-O2 -std=c++11").split(" ")));
+        command.add("-o");
+        command.add(binary.getPath());
+        command.add(source.getPath());
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        if (process.waitFor() != 0) {
+            throw new IOException("Compiling " + source + " failed");
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        long startedMicros = System.currentTimeMillis() * 1000;
+        if (args.length == 3 && args[0].equals("--worker")) {
+            runRecorded(startedMicros, args[1], new File(args[2]));
+            return;
+        }
+        File sources = new File(System.getProperty("src", "."));
+        File work = Files.createTempDirectory("crosscheck").toFile();
+        RngStreams streams = RngStreams.defaultStreams();
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        System.out.println("Seed: " + streams.seed());
+
+        List<String> report = new ArrayList<>();
+        try {
+            System.out.println("\nEquivalence (Java vs C++ on recorded uniforms):");
+            System.out.println("--------------------------------------------------");
+            System.out.printf("%-8s %-8s %-15s %-15s %-15s %-8s%n",
+                    "Model", "Reps", "Max Rel Diff", "Worst Metric", "Draw Diffs", "Result");
+            for (Model model : MODELS) {
+                File binary = new File(work, model.name.toLowerCase());
+                compile(new File(sources, model.source), binary);
+                File uniforms = new File(work, model.name + ".quf");
+                writeUniforms(uniforms, streams, model.replications, model.valuesPerStream);
+
+                List<String> cppCommand = new ArrayList<>();
+                cppCommand.add(binary.getPath());
+                cppCommand.add(uniforms.getPath());
+                cppCommand.addAll(Arrays.asList(model.cppArgs));
+                Run cpp = launch(cppCommand, model.replications);
+                Run javaRun = launch(Arrays.asList(java, "-cp", System.getProperty("java.class.path"),
+                        "CrossCheck", "--worker", model.name, uniforms.getPath()), model.replications);
+
+                double maxDiff = 0.0;
+                String worst = "-";
+                int mismatches = 0;
+                int drawDiffs = 0;
+                for (int r = 0; r < model.replications; r++) {
+                    for (int m = 0; m < model.metrics.length; m++) {
+                        double a = javaRun.metrics[r][m];
+                        double b = cpp.metrics[r][m];
+                        double scale = Math.max(Math.abs(a), Math.abs(b));
+                        double diff = scale > 0 ? Math.abs(a - b) / scale : 0.0;
+                        if (!(Math.abs(a - b) <= TOLERANCE * scale + 1e-12)) {
+                            mismatches++;
+                        }
+                        if (diff > maxDiff) {
+                            maxDiff = diff;
+                            worst = model.metrics[m];
+                        }
+                    }
+                    if (!Arrays.equals(javaRun.draws[r], cpp.draws[r])) {
+                        drawDiffs++;
+                    }
+                }
+                System.out.printf("%-8s %-8d %-15.3e %-15s %-15s %-8s%n", model.name, model.replications, maxDiff,
+                        worst.length() > 15 ? worst.substring(0, 15) : worst,
+                        model.sameDraws ? String.valueOf(drawDiffs) : "n/a",
+                        mismatches == 0 ? "PASS" : "FAIL (" + mismatches + ")");
+
+                double share = javaRun.steadyEventsPerSecond() / cpp.steadyEventsPerSecond();
+                report.add(String.format("%-8s %-8s %-15.3e %-15.3e %-15.1f %-15.1f%n", model.name, "C++",
+                        cpp.eventsPerSecond(), cpp.steadyEventsPerSecond(), cpp.startupMillis(), cpp.peakRssKb / 1024.0));
+                report.add(String.format("%-8s %-8s %-15.3e %-15.3e %-15.1f %-15.1f%s%n", "", "Java",
+                        javaRun.eventsPerSecond(), javaRun.steadyEventsPerSecond(), javaRun.startupMillis(),
+                        javaRun.peakRssKb / 1024.0,
+                        share < BEHIND ? String.format(" <-- Java hot path at %.2fx of C++", share) : ""));
+            }
+
+            System.out.println("\nPerformance (each implementation in its own process):");
+            System.out.println("--------------------------------------------------");
+            System.out.printf("%-8s %-8s %-15s %-15s %-15s %-15s%n",
+                    "Model", "Impl", "Events/s", "Steady Ev/s", "Startup (ms)", "Peak RSS (MB)");
+            for (String line : report) {
+                System.out.print(line);
+            }
+        } finally {
+            for (File file : work.listFiles()) {
+                file.delete();
+            }
+            work.delete();
+        }
+    }
+}
@@ -0,0 +1,378 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Optional store of every completed customer, for audits and ad-hoc analysis.
+// Records go into memory-mapped segment files outside the Java heap, one column per
+// field, so a store can hold billions of customers. Scans read the mapped columns
+// directly and hand primitives to a visitor; no object is created per record.
+//
+// Segment layout: a 64-byte header ("QCR1", capacity, record count), then the columns
+// replication, server, class (ints) and arrival, start, service, departure (doubles),
+// each `capacity` entries long, in native byte order.
+// Not thread-safe: one model writes to a recorder at a time.
+class CustomerRecorder implements Closeable {
+    static final int DEFAULT_SEGMENT_CAPACITY = 1 << 20;
+    private static final int HEADER = 64;
+    private static final int RECORD_BYTES = 3 * 4 + 4 * 8;
+    private static final int MAGIC = 0x51435231; // "QCR1"
+
+    // Receives one record per call during a scan
+    interface Visitor {
+        void visit(int replication, int server, int customerClass,
+                   double arrival, double start, double service, double departure);
+    }
+
+    // Counts and sums for one group of records; waits are departure - arrival - service,
+    // so time lost to preemption or interruption counts as waiting. The difference carries
+    // rounding noise of a few ulps for customers served at once, so it is clamped at zero.
+    static class Summary {
+        long count;
+        double waitSum;
+        double systemSum;
+        double serviceSum;
+
+        void add(double arrival, double service, double departure) {
+            count++;
+            waitSum += waitingTime(arrival, service, departure);
+            systemSum += departure - arrival;
+            serviceSum += service;
+        }
+
+        double getAvgWaitingTime() {
+            return count > 0 ? waitSum / count : 0.0;
+        }
+
+        double getAvgSystemTime() {
+            return count > 0 ? systemSum / count : 0.0;
+        }
+
+        double getBusyTime() {
+            return serviceSum;
+        }
+    }
+
+    private final File directory;
+    private final int capacity;
+    private MappedByteBuffer current; // segment being written, null when read-only
+    private int segments;
+    private int currentCount;
+
+    private CustomerRecorder(File directory, int capacity, int segments) {
+        this.directory = directory;
+        this.capacity = capacity;
+        this.segments = segments;
+    }
+
+    // New, empty store. The directory is created if needed and must not hold segments.
+    static CustomerRecorder create(File directory, int segmentCapacity) throws IOException {
+        if (segmentCapacity <= 0 || segmentCapacity % 8 != 0
+                || (long) segmentCapacity * RECORD_BYTES + HEADER > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment capacity must be a positive multiple of 8 below "
+                    + (Integer.MAX_VALUE - HEADER) / RECORD_BYTES + ": " + segmentCapacity);
+        }
+        Files.createDirectories(directory.toPath());
+        if (segmentFile(directory, 0).exists()) {
+            throw new IOException("Directory already holds customer records: " + directory);
+        }
+        return new CustomerRecorder(directory, segmentCapacity, 0);
+    }
+
+    // Existing store, for scans only
+    static CustomerRecorder open(File directory) throws IOException {
+        int segments = 0;
+        while (segmentFile(directory, segments).exists()) {
+            segments++;
+        }
+        if (segments == 0) {
+            throw new IOException("No customer records in " + directory);
+        }
+        MappedByteBuffer first = map(segmentFile(directory, 0), FileChannel.MapMode.READ_ONLY, HEADER);
+        if (first.getInt(0) != MAGIC) {
+            throw new IOException("Not a customer record segment: " + segmentFile(directory, 0));
+        }
+        return new CustomerRecorder(directory, first.getInt(4), segments);
+    }
+
+    private static File segmentFile(File directory, int segment) {
+        return new File(directory, String.format("segment-%06d.qcr", segment));
+    }
+
+    private static MappedByteBuffer map(File file, FileChannel.MapMode mode, long size) throws IOException {
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[] {StandardOpenOption.READ}
+                : new StandardOpenOption[] {StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW};
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(file.toPath(), options)) {
+            MappedByteBuffer buffer = channel.map(mode, 0, size);
+            buffer.order(ByteOrder.nativeOrder());
+            return buffer;
+        }
+    }
+
+    // byte offsets of the columns within a segment
+    private static int replicationColumn(int capacity) { return HEADER; }
+    private static int serverColumn(int capacity) { return HEADER + 4 * capacity; }
+    private static int classColumn(int capacity) { return HEADER + 8 * capacity; }
+    private static int arrivalColumn(int capacity) { return HEADER + 12 * capacity; }
+    private static int startColumn(int capacity) { return HEADER + 20 * capacity; }
+    private static int serviceColumn(int capacity) { return HEADER + 28 * capacity; }
+    private static int departureColumn(int capacity) { return HEADER + 36 * capacity; }
+
+    void record(int replication, int server, int customerClass,
+                double arrival, double start, double service, double departure) {
+        if (current == null || currentCount == capacity) {
+            nextSegment();
+        }
+        int i = currentCount++;
+        current.putInt(replicationColumn(capacity) + 4 * i, replication);
+        current.putInt(serverColumn(capacity) + 4 * i, server);
+        current.putInt(classColumn(capacity) + 4 * i, customerClass);
+        current.putDouble(arrivalColumn(capacity) + 8 * i, arrival);
+        current.putDouble(startColumn(capacity) + 8 * i, start);
+        current.putDouble(serviceColumn(capacity) + 8 * i, service);
+        current.putDouble(departureColumn(capacity) + 8 * i, departure);
+        // The count goes in last, so a crashed run still leaves a readable store
+        current.putLong(8, currentCount);
+    }
+
+    private void nextSegment() {
+        try {
+            if (current != null) {
+                current.force();
+            }
+            current = map(segmentFile(directory, segments), FileChannel.MapMode.READ_WRITE,
+                    HEADER + (long) RECORD_BYTES * capacity);
+            current.putInt(0, MAGIC);
+            current.putInt(4, capacity);
+            current.putLong(8, 0L);
+            segments++;
+            currentCount = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (current != null) {
+            current.force();
+            current = null;
+        }
+    }
+
+    private MappedByteBuffer readSegment(int segment) throws IOException {
+        return map(segmentFile(directory, segment), FileChannel.MapMode.READ_ONLY,
+                HEADER + (long) RECORD_BYTES * capacity);
+    }
+
+    long size() throws IOException {
+        long count = 0;
+        for (int s = 0; s < segments; s++) {
+            count += map(segmentFile(directory, s), FileChannel.MapMode.READ_ONLY, HEADER).getLong(8);
+        }
+        return count;
+    }
+
+    // Visits the records whose arrival time is in [from, to), segment by segment
+    void scan(double from, double to, Visitor visitor) throws IOException {
+        int arrivalColumn = arrivalColumn(capacity);
+        for (int s = 0; s < segments; s++) {
+            MappedByteBuffer segment = readSegment(s);
+            int count = (int) segment.getLong(8);
+            for (int i = 0; i < count; i++) {
+                double arrival = segment.getDouble(arrivalColumn + 8 * i);
+                if (arrival >= from && arrival < to) {
+                    visitor.visit(segment.getInt(replicationColumn(capacity) + 4 * i),
+                            segment.getInt(serverColumn(capacity) + 4 * i),
+                            segment.getInt(classColumn(capacity) + 4 * i),
+                            arrival,
+                            segment.getDouble(startColumn(capacity) + 8 * i),
+                            segment.getDouble(serviceColumn(capacity) + 8 * i),
+                            segment.getDouble(departureColumn(capacity) + 8 * i));
+                }
+            }
+        }
+    }
+
+    Summary summarize(double from, double to) throws IOException {
+        Summary summary = new Summary();
+        scan(from, to, (replication, server, customerClass, arrival, start, service, departure)
+                -> summary.add(arrival, service, departure));
+        return summary;
+    }
+
+    // One summary per server index that appears in the window
+    Summary[] summarizeByServer(double from, double to) throws IOException {
+        Summary[][] byServer = {new Summary[0]};
+        scan(from, to, (replication, server, customerClass, arrival, start, service, departure) -> {
+            if (server >= byServer[0].length) {
+                Summary[] larger = Arrays.copyOf(byServer[0], server + 1);
+                for (int i = byServer[0].length; i < larger.length; i++) {
+                    larger[i] = new Summary();
+                }
+                byServer[0] = larger;
+            }
+            byServer[0][server].add(arrival, service, departure);
+        });
+        return byServer[0];
+    }
+
+    // Exact waiting-time percentile of the customers arriving in [from, to). Each pass
+    // histograms the candidate range into REFINE_BINS bins and keeps the bin holding
+    // the wanted rank, until it is small enough to sort; memory stays constant.
+    private static final int REFINE_BINS = 4096;
+    private static final int SORT_LIMIT = 1 << 16;
+
+    double waitPercentile(double p, double from, double to) throws IOException {
+        // [0] count below range, [1] count in range, [2] min in range, [3] max in range
+        double[] range = rangeStats(from, to, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+        long total = (long) range[1];
+        if (total == 0) {
+            return Double.NaN;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p * total)); // 1-based
+        double low = range[2];
+        double high = Math.nextUp(range[3]);
+        long below = 0;
+        long[] bins = new long[REFINE_BINS];
+        double[] edges = new double[REFINE_BINS + 1];
+
+        while (true) {
+            double[] stats = rangeStats(from, to, low, high);
+            long inRange = (long) stats[1];
+            if (stats[2] == stats[3]) {
+                return stats[2];
+            }
+            if (inRange <= SORT_LIMIT) {
+                double[] values = collect(from, to, low, high, (int) inRange);
+                Arrays.sort(values);
+                return values[(int) (rank - below - 1)];
+            }
+            low = stats[2];
+            high = Math.nextUp(stats[3]);
+            for (int b = 0; b <= REFINE_BINS; b++) {
+                edges[b] = b == REFINE_BINS ? high : low + (high - low) * b / REFINE_BINS;
+            }
+            histogram(from, to, edges, bins);
+            for (int b = 0; b < REFINE_BINS; b++) {
+                if (below + bins[b] >= rank) {
+                    low = edges[b];
+                    high = edges[b + 1];
+                    break;
+                }
+                below += bins[b];
+            }
+        }
+    }
+
+    private static double waitingTime(double arrival, double service, double departure) {
+        return Math.max(0.0, departure - arrival - service);
+    }
+
+    // count, min and max of the waits in [low, high) for arrivals in [from, to)
+    private double[] rangeStats(double from, double to, double low, double high) throws IOException {
+        double[] stats = {0.0, 0.0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        scan(from, to, (replication, server, customerClass, arrival, start, service, departure) -> {
+            double wait = waitingTime(arrival, service, departure);
+            if (wait >= low && wait < high) {
+                stats[1]++;
+                stats[2] = Math.min(stats[2], wait);
+                stats[3] = Math.max(stats[3], wait);
+            }
+        });
+        return stats;
+    }
+
+    private void histogram(double from, double to, double[] edges, long[] bins) throws IOException {
+        Arrays.fill(bins, 0L);
+        double low = edges[0];
+        double high = edges[REFINE_BINS];
+        scan(from, to, (replication, server, customerClass, arrival, start, service, departure) -> {
+            double wait = waitingTime(arrival, service, departure);
+            if (wait >= low && wait < high) {
+                int bin = Math.min((int) ((wait - low) / (high - low) * REFINE_BINS), REFINE_BINS - 1);
+                // the division can round across an edge; the edges array is authoritative
+                while (wait < edges[bin]) bin--;
+                while (wait >= edges[bin + 1]) bin++;
+                bins[bin]++;
+            }
+        });
+    }
+
+    private double[] collect(double from, double to, double low, double high, int count) throws IOException {
+        double[] values = new double[count];
+        int[] filled = {0};
+        scan(from, to, (replication, server, customerClass, arrival, start, service, departure) -> {
+            double wait = waitingTime(arrival, service, departure);
+            if (wait >= low && wait < high) {
+                values[filled[0]++] = wait;
+            }
+        });
+        return values;
+    }
+
+    // Records 1000 days of Q1 and analyses them from the store
+    public static void main(String[] args) throws IOException {
+        boolean temporary = args.length == 0;
+        File directory = temporary ? Files.createTempDirectory("customers").toFile() : new File(args[0]);
+        int replications = 1000;
+
+        System.out.println("Seed: " + RngStreams.defaultSeed());
+        Q1 simulation = new Q1(40.0, 15.0, RngStreams.defaultStreams());
+        long start = System.nanoTime();
+        try (CustomerRecorder recorder = create(directory, DEFAULT_SEGMENT_CAPACITY)) {
+            simulation.setRecorder(recorder);
+            for (int i = 0; i < replications; i++) {
+                simulation.runSimulation(i, null);
+            }
+        }
+        double recordSeconds = (System.nanoTime() - start) / 1e9;
+
+        CustomerRecorder store = open(directory);
+        start = System.nanoTime();
+        long size = store.size();
+        System.out.printf("%nRecorded %d customers from %d replications in %.2f s (%s)%n",
+                size, replications, recordSeconds, directory);
+
+        System.out.println("\nWaiting time by arrival window:");
+        System.out.println("--------------------------------------------------");
+        System.out.printf("%-12s %-12s %-15s %-15s %-15s %-15s%n",
+                "Window", "Customers", "Avg Wait Time", "Median Wait", "90th Pct Wait", "99th Pct Wait");
+        double[][] windows = {{0.0, 2.0}, {2.0, 5.0}, {5.0, Q1.SIMULATION_TIME}, {0.0, Q1.SIMULATION_TIME}};
+        String[] labels = {"0-2 hours", "2-5 hours", "5-8 hours", "Entire day"};
+        for (int w = 0; w < windows.length; w++) {
+            Summary summary = store.summarize(windows[w][0], windows[w][1]);
+            System.out.printf("%-12s %-12d %-15.4f %-15.4f %-15.4f %-15.4f%n", labels[w], summary.count,
+                    summary.getAvgWaitingTime(),
+                    store.waitPercentile(0.50, windows[w][0], windows[w][1]),
+                    store.waitPercentile(0.90, windows[w][0], windows[w][1]),
+                    store.waitPercentile(0.99, windows[w][0], windows[w][1]));
+        }
+
+        System.out.println("\nPer-server breakdown (entire day):");
+        System.out.println("--------------------------------------------------");
+        System.out.printf("%-10s %-12s %-15s %-15s %-15s%n", "Server", "Customers", "Avg Wait Time", "Avg Sys Time", "Busy Hrs/Day");
+        Summary[] byServer = store.summarizeByServer(0.0, Q1.SIMULATION_TIME);
+        for (int s = 0; s < byServer.length; s++) {
+            System.out.printf("%-10d %-12d %-15.4f %-15.4f %-15.4f%n", s, byServer[s].count,
+                    byServer[s].getAvgWaitingTime(), byServer[s].getAvgSystemTime(),
+                    byServer[s].getBusyTime() / replications);
+        }
+        System.out.printf("%nAnalysis time: %.2f s%n", (System.nanoTime() - start) / 1e9);
+
+        if (temporary) {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+}
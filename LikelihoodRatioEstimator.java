@@ -0,0 +1,83 @@
+// Derivative of a regenerative ratio r = E[Y] / E[X] with respect to a parameter of the
+// input distributions, by the likelihood-ratio (score function) method. With L the sum
+// over one cycle of d/dtheta log f of every draw made in it, dE[Y]/dtheta = E[Y L], so
+// dr/dtheta = (E[Y L] - r E[X L]) / E[X], read from one run at the nominal parameter.
+// The confidence interval is the delta method on the four cycle means; their co-moments
+// are kept Welford-style, as in RatioEstimator, so partial estimators can be merged.
+class LikelihoodRatioEstimator {
+    private static final int Y = 0, X = 1, YL = 2, XL = 3;
+
+    private long n;
+    private final double[] mean = new double[4];
+    private final double[][] comoment = new double[4][4]; // sums of products of deviations
+
+    void add(double y, double x, double score) {
+        double[] value = {y, x, y * score, x * score};
+        n++;
+        double[] delta = new double[4];
+        for (int i = 0; i < 4; i++) {
+            delta[i] = value[i] - mean[i];
+            mean[i] += delta[i] / n;
+        }
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                comoment[i][j] += delta[i] * (value[j] - mean[j]);
+            }
+        }
+    }
+
+    void merge(LikelihoodRatioEstimator other) {
+        if (other.n == 0) {
+            return;
+        }
+        long total = n + other.n;
+        double weight = (double) n * other.n / total;
+        double[] delta = new double[4];
+        for (int i = 0; i < 4; i++) {
+            delta[i] = other.mean[i] - mean[i];
+        }
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                comoment[i][j] += other.comoment[i][j] + delta[i] * delta[j] * weight;
+            }
+            mean[i] += delta[i] * other.n / total;
+        }
+        n = total;
+    }
+
+    long cycles() {
+        return n;
+    }
+
+    double estimate() {
+        if (mean[X] == 0.0) {
+            return Double.NaN;
+        }
+        double r = mean[Y] / mean[X];
+        return (mean[YL] - r * mean[XL]) / mean[X];
+    }
+
+    double standardError() {
+        if (n < 2 || mean[X] == 0.0) {
+            return Double.NaN;
+        }
+        double r = mean[Y] / mean[X];
+        double[] gradient = new double[4];
+        gradient[Y] = -mean[XL] / (mean[X] * mean[X]);
+        gradient[X] = (2 * r * mean[XL] - mean[YL]) / (mean[X] * mean[X]);
+        gradient[YL] = 1.0 / mean[X];
+        gradient[XL] = -r / mean[X];
+        double variance = 0.0;
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                variance += gradient[i] * comoment[i][j] * gradient[j];
+            }
+        }
+        return Math.sqrt(Math.max(variance, 0.0) / (n - 1) / n);
+    }
+
+    // 95% confidence half-width
+    double halfWidth() {
+        return 1.96 * standardError();
+    }
+}
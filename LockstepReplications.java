@@ -0,0 +1,428 @@
+// Batched replications of the single-server models. Instead of one event loop per
+// replication, a block of replications (lanes) advances one customer at a time over
+// primitive arrays: waits come from the Lindley recursion W = max(0, D_prev - A) for Q3,
+// and from a ring of the last `capacity` departures for Q2's finite buffer, where an
+// arrival is admitted exactly when the oldest of those departures has already happened.
+// The kernel below is batched scalar code: one lane at a time, over arrays laid out by
+// lane; it calls Math.log and branches per lane, so C2 does not vectorize it. vector/LockstepVectorKernel.java holds the same kernels on jdk.incubator.vector;
+// it is compiled apart, since it needs the incubator module, and used when present:
+//   javac --add-modules jdk.incubator.vector -cp . -d . vector/LockstepVectorKernel.java
+//   java --add-modules jdk.incubator.vector LockstepReplications
+// -Dlockstep.kernel=scalar keeps the scalar kernel anyway.
+public class LockstepReplications {
+    static final int LANES = Integer.getInteger("lockstep.lanes", 256);
+
+    // Runs one block of `lanes` replications starting at `firstReplication` into the batch
+    // at `offset`
+    interface Kernel {
+        String name();
+
+        void runQ3Block(double lambda, double mu, int arrivals, RngStreams streams, long firstReplication,
+                        int lanes, Q3Batch batch, int offset);
+
+        void runQ2Block(double lambda, double mu, int capacity, double horizon, RngStreams streams,
+                        long firstReplication, int lanes, Q2Batch batch, int offset);
+    }
+
+    static final Kernel SCALAR = new Kernel() {
+        @Override
+        public String name() {
+            return "scalar";
+        }
+
+        @Override
+        public void runQ3Block(double lambda, double mu, int arrivals, RngStreams streams, long firstReplication,
+                               int lanes, Q3Batch batch, int offset) {
+            LockstepReplications.runQ3Block(lambda, mu, arrivals, streams, firstReplication, lanes, batch, offset);
+        }
+
+        @Override
+        public void runQ2Block(double lambda, double mu, int capacity, double horizon, RngStreams streams,
+                               long firstReplication, int lanes, Q2Batch batch, int offset) {
+            LockstepReplications.runQ2Block(lambda, mu, capacity, horizon, streams, firstReplication, lanes,
+                    batch, offset);
+        }
+    };
+
+    static final Kernel KERNEL = loadKernel();
+
+    private static Kernel loadKernel() {
+        if ("scalar".equals(System.getProperty("lockstep.kernel"))) {
+            return SCALAR;
+        }
+        try {
+            return (Kernel) Class.forName("LockstepVectorKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // not compiled, or run without --add-modules jdk.incubator.vector
+            return SCALAR;
+        }
+    }
+
+    // Per-replication results of a Q3 batch, same meaning as Q3.SimulationResults
+    static class Q3Batch {
+        double[] avgWaitingTime;
+        double[] avgSystemTime;
+        double[] utilizationFactor;
+        double[] avgQueueLength;
+        int[] maxQueueLength;
+        double[] emptyQueueProbability;
+
+        Q3Batch(int replications) {
+            avgWaitingTime = new double[replications];
+            avgSystemTime = new double[replications];
+            utilizationFactor = new double[replications];
+            avgQueueLength = new double[replications];
+            maxQueueLength = new int[replications];
+            emptyQueueProbability = new double[replications];
+        }
+    }
+
+    // Per-replication results of a Q2 batch, same meaning as Q2.SimulationResults
+    static class Q2Batch {
+        double[] avgWaitingTime;
+        double[] avgSystemTime;
+        double[] utilizationRate;
+        double[] avgQueueLength;
+        double[] probSystemFull;
+        double[] probRejection;
+
+        Q2Batch(int replications) {
+            avgWaitingTime = new double[replications];
+            avgSystemTime = new double[replications];
+            utilizationRate = new double[replications];
+            avgQueueLength = new double[replications];
+            probSystemFull = new double[replications];
+            probRejection = new double[replications];
+        }
+    }
+
+    // MRG32k3a for many substreams at once, one array per state component. The arithmetic
+    // is done in doubles as in L'Ecuyer's reference code; every product stays below 2^53,
+    // so each lane produces exactly the numbers of the matching RngStreams.Stream.
+    static class LaneStreams {
+        final double[] s10, s11, s12, s20, s21, s22; // read directly by the vector kernel
+
+        LaneStreams(RngStreams streams, long firstReplication, int lanes, int purpose) {
+            s10 = new double[lanes];
+            s11 = new double[lanes];
+            s12 = new double[lanes];
+            s20 = new double[lanes];
+            s21 = new double[lanes];
+            s22 = new double[lanes];
+            for (int r = 0; r < lanes; r++) {
+                long[] state = streams.streamState(firstReplication + r, purpose);
+                s10[r] = state[0];
+                s11[r] = state[1];
+                s12[r] = state[2];
+                s20[r] = state[3];
+                s21[r] = state[4];
+                s22[r] = state[5];
+            }
+        }
+
+        // One uniform per lane into u[0..lanes). The reductions are branch-free: an exact
+        // integer p reduced with floor(p / m) lands within one m of [0, m), and the second
+        // floor corrects that.
+        void next(double[] u, int lanes) {
+            final double m1 = RngStreams.M1;
+            final double m2 = RngStreams.M2;
+            final double inverseM1 = 1.0 / m1;
+            final double inverseM2 = 1.0 / m2;
+            for (int r = 0; r < lanes; r++) {
+                double p1 = 1403580.0 * s11[r] - 810728.0 * s10[r];
+                p1 -= Math.floor(p1 * inverseM1) * m1;
+                p1 -= Math.floor(p1 * inverseM1) * m1;
+                s10[r] = s11[r];
+                s11[r] = s12[r];
+                s12[r] = p1;
+
+                double p2 = 527612.0 * s22[r] - 1370589.0 * s20[r];
+                p2 -= Math.floor(p2 * inverseM2) * m2;
+                p2 -= Math.floor(p2 * inverseM2) * m2;
+                s20[r] = s21[r];
+                s21[r] = s22[r];
+                s22[r] = p2;
+
+                // p1 - p2 if positive, otherwise p1 - p2 + m1
+                double d = p1 - p2;
+                d -= Math.floor((d - 0.5) * inverseM1) * m1;
+                u[r] = d * RngStreams.NORM;
+            }
+        }
+    }
+
+    // M/M/1 with a fixed number of arrivals (Q3), replications [first, first + replications)
+    static Q3Batch runQ3(double lambda, double mu, int arrivals, RngStreams streams,
+                         long firstReplication, int replications, int lanes) {
+        return runQ3(lambda, mu, arrivals, streams, firstReplication, replications, lanes, KERNEL);
+    }
+
+    static Q3Batch runQ3(double lambda, double mu, int arrivals, RngStreams streams,
+                         long firstReplication, int replications, int lanes, Kernel kernel) {
+        Q3Batch batch = new Q3Batch(replications);
+        for (int offset = 0; offset < replications; offset += lanes) {
+            kernel.runQ3Block(lambda, mu, arrivals, streams, firstReplication + offset,
+                    Math.min(lanes, replications - offset), batch, offset);
+        }
+        return batch;
+    }
+
+    private static void runQ3Block(double lambda, double mu, int arrivals, RngStreams streams,
+                                   long firstReplication, int lanes, Q3Batch batch, int offset) {
+        LaneStreams arrivalStreams = new LaneStreams(streams, firstReplication, lanes, RngStreams.ARRIVALS);
+        LaneStreams serviceStreams = new LaneStreams(streams, firstReplication, lanes, RngStreams.SERVICE);
+        double[] u = new double[lanes];
+        double[] arrival = new double[lanes];
+        double[] departure = new double[lanes];
+        double[] totalWait = new double[lanes];
+        double[] busy = new double[lanes];
+        // departure history, one contiguous row per lane, to count how many are still in the system
+        double[] history = new double[arrivals * lanes];
+        int[] oldest = new int[lanes];
+        int[] maxInSystem = new int[lanes];
+
+        for (int n = 0; n < arrivals; n++) {
+            arrivalStreams.next(u, lanes);
+            for (int r = 0; r < lanes; r++) {
+                arrival[r] += -Math.log(1.0 - u[r]) / lambda;
+            }
+            serviceStreams.next(u, lanes);
+            for (int r = 0; r < lanes; r++) {
+                double service = -Math.log(1.0 - u[r]) / mu;
+                double start = Math.max(arrival[r], departure[r]);
+                totalWait[r] += start - arrival[r];
+                busy[r] += service;
+                departure[r] = start + service;
+                history[r * arrivals + n] = departure[r];
+            }
+            // FIFO departures are increasing, so the customers still present are a suffix
+            for (int r = 0; r < lanes; r++) {
+                int h = oldest[r];
+                int row = r * arrivals;
+                while (history[row + h] <= arrival[r]) {
+                    h++;
+                }
+                oldest[r] = h;
+                maxInSystem[r] = Math.max(maxInSystem[r], n - h + 1);
+            }
+        }
+
+        for (int r = 0; r < lanes; r++) {
+            // the run ends when the last customer leaves
+            double totalTime = departure[r];
+            double totalSystem = totalWait[r] + busy[r];
+            int i = offset + r;
+            batch.avgWaitingTime[i] = totalWait[r] / arrivals;
+            batch.avgSystemTime[i] = totalSystem / arrivals;
+            batch.utilizationFactor[i] = busy[r] / totalTime;
+            // time-average number in system equals total sojourn over total time once everyone has left
+            batch.avgQueueLength[i] = totalSystem / totalTime;
+            batch.maxQueueLength[i] = maxInSystem[r];
+            batch.emptyQueueProbability[i] = (totalTime - busy[r]) / totalTime;
+        }
+    }
+
+    // M/M/1/K over a fixed horizon (Q2), replications [first, first + replications)
+    static Q2Batch runQ2(double lambda, double mu, int capacity, double horizon, RngStreams streams,
+                         long firstReplication, int replications, int lanes) {
+        return runQ2(lambda, mu, capacity, horizon, streams, firstReplication, replications, lanes, KERNEL);
+    }
+
+    static Q2Batch runQ2(double lambda, double mu, int capacity, double horizon, RngStreams streams,
+                         long firstReplication, int replications, int lanes, Kernel kernel) {
+        Q2Batch batch = new Q2Batch(replications);
+        for (int offset = 0; offset < replications; offset += lanes) {
+            kernel.runQ2Block(lambda, mu, capacity, horizon, streams, firstReplication + offset,
+                    Math.min(lanes, replications - offset), batch, offset);
+        }
+        return batch;
+    }
+
+    private static void runQ2Block(double lambda, double mu, int capacity, double horizon, RngStreams streams,
+                                   long firstReplication, int lanes, Q2Batch batch, int offset) {
+        LaneStreams arrivalStreams = new LaneStreams(streams, firstReplication, lanes, RngStreams.ARRIVALS);
+        LaneStreams serviceStreams = new LaneStreams(streams, firstReplication, lanes, RngStreams.SERVICE);
+        double[] u = new double[lanes];
+        double[] service = new double[lanes];
+        double[] arrival = new double[lanes];
+        double[] departure = new double[lanes];
+        double[] totalWait = new double[lanes];
+        double[] totalSystem = new double[lanes];
+        double[] busy = new double[lanes];
+        double[] fullTime = new double[lanes];
+        long[] arrivals = new long[lanes];
+        long[] rejections = new long[lanes];
+        // departures of the last `capacity` admitted customers; a zero means "already gone"
+        double[] ring = new double[capacity * lanes];
+        int[] head = new int[lanes];
+        int active = lanes;
+
+        while (active > 0) {
+            arrivalStreams.next(u, lanes);
+            for (int r = 0; r < lanes; r++) {
+                arrival[r] += -Math.log(1.0 - u[r]) / lambda;
+            }
+            serviceStreams.next(service, lanes);
+            active = 0;
+            for (int r = 0; r < lanes; r++) {
+                double a = arrival[r];
+                if (a >= horizon) {
+                    continue;
+                }
+                active++;
+                arrivals[r]++;
+                int slot = head[r] * lanes + r;
+                if (ring[slot] <= a) {
+                    double s = -Math.log(1.0 - service[r]) / mu;
+                    double start = Math.max(a, departure[r]);
+                    double end = start + s;
+                    departure[r] = end;
+                    totalWait[r] += start - a;
+                    totalSystem[r] += end - a;
+                    // time averages only count what happens inside the horizon
+                    busy[r] += Math.max(0.0, Math.min(end, horizon) - start);
+                    ring[slot] = end;
+                    head[r] = head[r] + 1 == capacity ? 0 : head[r] + 1;
+                    // full until the oldest remaining customer leaves
+                    double nextOldest = ring[head[r] * lanes + r];
+                    if (nextOldest > a) {
+                        fullTime[r] += Math.min(nextOldest, horizon) - a;
+                    }
+                } else {
+                    rejections[r]++;
+                }
+            }
+        }
+
+        for (int r = 0; r < lanes; r++) {
+            long admitted = arrivals[r] - rejections[r];
+            int i = offset + r;
+            batch.avgWaitingTime[i] = totalWait[r] / admitted;
+            batch.avgSystemTime[i] = totalSystem[r] / admitted;
+            batch.utilizationRate[i] = busy[r] / horizon;
+            batch.avgQueueLength[i] = totalSystem[r] / horizon;
+            batch.probSystemFull[i] = fullTime[r] / horizon;
+            batch.probRejection[i] = (double) rejections[r] / arrivals[r];
+        }
+    }
+
+    // Compares every Q3 replication with Q3.runSimulation on the same substreams
+    static double verifyAgainstQ3(double lambda, double mu, RngStreams streams, int replications) {
+        Q3Batch batch = runQ3(lambda, mu, Q3.ARRIVALS, streams, 0, replications, LANES);
+        Q3 simulation = new Q3(lambda, mu, QueueDiscipline.Type.FIFO, new double[] {1.0}, streams);
+        double maxError = 0.0;
+        for (int i = 0; i < replications; i++) {
+            Q3.SimulationResults results = simulation.runSimulation(i);
+            maxError = Math.max(maxError, Math.abs(results.avgWaitingTime - batch.avgWaitingTime[i]));
+            maxError = Math.max(maxError, Math.abs(results.avgSystemTime - batch.avgSystemTime[i]));
+            maxError = Math.max(maxError, Math.abs(results.utilizationFactor - batch.utilizationFactor[i]));
+            maxError = Math.max(maxError, Math.abs(results.avgQueueLength - batch.avgQueueLength[i]));
+            maxError = Math.max(maxError, Math.abs(results.emptyQueueProbability - batch.emptyQueueProbability[i]));
+            maxError = Math.max(maxError, Math.abs(results.maxQueueLength - batch.maxQueueLength[i]));
+        }
+        return maxError;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0.0;
+        for (double v : values) {
+            sum += v;
+        }
+        return sum / values.length;
+    }
+
+    private static double standardError(double[] values) {
+        double m = mean(values);
+        double sum = 0.0;
+        for (double v : values) {
+            sum += (v - m) * (v - m);
+        }
+        return Math.sqrt(sum / (values.length - 1) / values.length);
+    }
+
+    public static void main(String[] args) {
+        double lambda = 10.0;
+        double mu = 15.0;
+        int replications = 20000;
+        RngStreams streams = RngStreams.defaultStreams();
+        System.out.println("Seed: " + streams.seed());
+
+        System.out.println("Kernel: " + KERNEL.name());
+
+        double maxError = verifyAgainstQ3(lambda, mu, streams, 2000);
+        System.out.printf("Q3 check, 2000 replications: max |lockstep - event loop| = %.3e%n", maxError);
+
+        System.out.println("\nQ3 replications per second (" + Q3.ARRIVALS + " arrivals each):");
+        System.out.println("--------------------------------------------------");
+        for (int round = 0; round < 2; round++) { // the first round warms up the JIT
+            Q3 simulation = new Q3(lambda, mu, QueueDiscipline.Type.FIFO, new double[] {1.0}, streams);
+            long start = System.nanoTime();
+            for (int i = 0; i < replications; i++) {
+                simulation.runSimulation(i);
+            }
+            double eventLoop = replications / ((System.nanoTime() - start) / 1e9);
+
+            start = System.nanoTime();
+            runQ3(lambda, mu, Q3.ARRIVALS, streams, 0, replications, 1, SCALAR);
+            double scalar = replications / ((System.nanoTime() - start) / 1e9);
+
+            start = System.nanoTime();
+            runQ3(lambda, mu, Q3.ARRIVALS, streams, 0, replications, LANES, SCALAR);
+            double batched = replications / ((System.nanoTime() - start) / 1e9);
+
+            double vector = Double.NaN;
+            if (KERNEL != SCALAR) {
+                start = System.nanoTime();
+                runQ3(lambda, mu, Q3.ARRIVALS, streams, 0, replications, LANES, KERNEL);
+                vector = replications / ((System.nanoTime() - start) / 1e9);
+            }
+
+            if (round == 1) {
+                System.out.printf("%-30s %-15.0f%n", "Event loop", eventLoop);
+                System.out.printf("%-30s %-15.0f %.1fx%n", "Scalar, 1 lane", scalar, scalar / eventLoop);
+                System.out.printf("%-30s %-15.0f %.1fx%n", "Batched scalar, " + LANES + " lanes", batched,
+                        batched / eventLoop);
+                if (KERNEL != SCALAR) {
+                    System.out.printf("%-30s %-15.0f %.1fx%n", "Vector, " + LANES + " lanes", vector, vector / eventLoop);
+                }
+            }
+        }
+        if (KERNEL == SCALAR) {
+            System.out.println("(vector kernel not loaded; see the class comment to enable it)");
+        } else {
+            // same uniforms, so the kernels only differ by the rounding of the vector log
+            Q2Batch scalarQ2 = runQ2(20.0, 24.0, 5, Q2.SIMULATION_TIME, streams, 0, 2000, LANES, SCALAR);
+            Q2Batch vectorQ2 = runQ2(20.0, 24.0, 5, Q2.SIMULATION_TIME, streams, 0, 2000, LANES, KERNEL);
+            double maxDifference = 0.0;
+            for (int i = 0; i < 2000; i++) {
+                maxDifference = Math.max(maxDifference, Math.abs(scalarQ2.avgWaitingTime[i] - vectorQ2.avgWaitingTime[i]));
+                maxDifference = Math.max(maxDifference, Math.abs(scalarQ2.probRejection[i] - vectorQ2.probRejection[i]));
+                maxDifference = Math.max(maxDifference, Math.abs(scalarQ2.probSystemFull[i] - vectorQ2.probSystemFull[i]));
+                maxDifference = Math.max(maxDifference, Math.abs(scalarQ2.utilizationRate[i] - vectorQ2.utilizationRate[i]));
+            }
+            System.out.printf("%nQ2 check, 2000 replications: max |vector - scalar kernel| = %.3e%n", maxDifference);
+        }
+
+        // Q2 draws service only for admitted customers, so lanes are compared statistically
+        int capacity = 5;
+        int q2Replications = 200;
+        Q2Batch batch = runQ2(20.0, 24.0, capacity, Q2.SIMULATION_TIME, streams, 0, q2Replications, LANES);
+        Q2 q2 = new Q2(20.0, 24.0, capacity, QueueDiscipline.Type.FIFO, new double[] {1.0}, streams);
+        double[] eventWait = new double[q2Replications];
+        double[] eventRejection = new double[q2Replications];
+        for (int i = 0; i < q2Replications; i++) {
+            Q2.SimulationResults results = q2.runSimulation(i);
+            eventWait[i] = results.avgWaitingTime;
+            eventRejection[i] = results.probRejection;
+        }
+        System.out.println("\nQ2 check (capacity " + capacity + ", " + q2Replications + " replications):");
+        System.out.println("--------------------------------------------------");
+        System.out.printf("%-25s %-15s %-15s %-15s%n", "Metric", "Event loop", "Lockstep", "Diff / SE");
+        System.out.printf("%-25s %-15.6f %-15.6f %-15.2f%n", "Avg Wait Time", mean(eventWait), mean(batch.avgWaitingTime),
+                (mean(batch.avgWaitingTime) - mean(eventWait))
+                        / Math.hypot(standardError(eventWait), standardError(batch.avgWaitingTime)));
+        System.out.printf("%-25s %-15.6f %-15.6f %-15.2f%n", "P(Rejection)", mean(eventRejection), mean(batch.probRejection),
+                (mean(batch.probRejection) - mean(eventRejection))
+                        / Math.hypot(standardError(eventRejection), standardError(batch.probRejection)));
+    }
+}
@@ -1,10 +1,11 @@
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.Queue;
 import java.util.Random;
 
 public class Q1 {
-    private static final double SIMULATION_TIME = 8.0; // hours
+    static final double SIMULATION_TIME = 8.0; // hours
 
     static class Customer {
         double arrivalTime;
@@ -87,24 +88,42 @@ public class Q1 {
         }
     }
 
-    private Random random;
+    private RngStreams streams;
+    private Random arrivalRandom; // substreams of the current replication
+    private Random serviceRandom;
     private double lambda; // arrival rate
     private double mu;     // service rate per server
     private int maxServers; // maximum number of servers (used to initialize server array)
+    private CustomerRecorder recorder; // optional store of every completed customer
+    private ArrivalProcess arrivalProcess; // Poisson at rate lambda unless replaced
 
     public Q1(double lambda, double mu) {
-        this.random = new Random();
+        this(lambda, mu, RngStreams.defaultStreams());
+    }
+
+    public Q1(double lambda, double mu, RngStreams streams) {
+        this.streams = streams;
         this.lambda = lambda;
         this.mu = mu;
         this.maxServers = 4; // maximum number of servers needed at any point
+        this.arrivalProcess = ArrivalProcess.constant(lambda);
+    }
+
+    void setRecorder(CustomerRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    // Time-varying arrivals instead of a constant lambda
+    void setArrivalProcess(ArrivalProcess arrivalProcess) {
+        this.arrivalProcess = arrivalProcess;
     }
 
-    private double getExponential(double rate) {
-        return -Math.log(1.0 - random.nextDouble()) / rate;
+    private double getExponential(Random source, double rate) {
+        return -Math.log(1.0 - source.nextDouble()) / rate;
     }
 
     // Determine number of active servers based on current time
-    private int getActiveServers(double currentTime) {
+    static int getActiveServers(double currentTime) {
         if (currentTime < 2.0) {
             return 2; // First 2 hours: 2 servers
         } else if (currentTime < 5.0) {
@@ -115,13 +134,18 @@ public class Q1 {
     }
 
     // Determine which period the time falls into
-    private int getPeriod(double time) {
+    static int getPeriod(double time) {
         if (time < 2.0) return 0; // Period 1: 0-2 hours
         else if (time < 5.0) return 1; // Period 2: 2-5 hours
         else return 2; // Period 3: 5-8 hours
     }
 
-    private void runSimulation() {
+    // Runs one replication; returns the three period results followed by the entire day.
+    // The time series collector, if given, receives the state between events.
+    PeriodResults[] runSimulation(int replication, TimeSeriesCollector series) {
+        arrivalRandom = streams.stream(replication, RngStreams.ARRIVALS);
+        serviceRandom = streams.stream(replication, RngStreams.SERVICE);
+
         Queue<Customer> queue = new LinkedList<>();
         ArrayList<Customer> completedCustomers = new ArrayList<>();
         Server[] servers = new Server[maxServers];
@@ -137,7 +161,8 @@ public class Q1 {
         PeriodResults entireDayResults = new PeriodResults(SIMULATION_TIME);
 
         double currentTime = 0.0;
-        double nextArrival = getExponential(lambda);
+        arrivalProcess.reset();
+        double nextArrival = arrivalProcess.next(currentTime, arrivalRandom);
         double lastEventTime = currentTime;
         int totalArrivals = 0;
 
@@ -165,6 +190,9 @@ public class Q1 {
                 nextEventTime = nextDeparture;
                 isArrivalEvent = false;
             }
+            if (nextEventTime == Double.MAX_VALUE) {
+                break; // an arrival process that has ended, and nobody in service
+            }
 
             // Update metrics over the interval from the current time to next event
             double timeInterval = nextEventTime - currentTime;
@@ -173,6 +201,9 @@ public class Q1 {
                 entireDayResults.addQueueLengthTime(queue.size(), timeInterval);
 
                 int busyServers = countBusyServers(servers, activeServers);
+                if (series != null) {
+                    series.addInterval(currentTime, nextEventTime, queue.size(), busyServers);
+                }
                 if (busyServers == activeServers) {
                     periodResults[currentPeriod].addAllBusyTime(timeInterval);
                     entireDayResults.addAllBusyTime(timeInterval);
@@ -191,7 +222,7 @@ public class Q1 {
                 if (availableServer != -1) {
                     // Server is available; begin service immediately.
                     customer.serviceStartTime = currentTime;
-                    customer.serviceTime = getExponential(mu);
+                    customer.serviceTime = getExponential(serviceRandom, mu);
                     customer.departureTime = currentTime + customer.serviceTime;
                     customer.serverId = availableServer;
 
@@ -202,7 +233,7 @@ public class Q1 {
                     // No server is available; add customer to queue.
                     queue.add(customer);
                 }
-                nextArrival = currentTime + getExponential(lambda);
+                nextArrival = arrivalProcess.next(currentTime, arrivalRandom);
             } else {
                 // Process departure event
                 Customer served = servers[departingServer].currentCustomer;
@@ -212,6 +243,13 @@ public class Q1 {
                 entireDayResults.addCustomer(served);
                 periodResults[departurePeriod].addBusyTime(served.serviceTime);
                 entireDayResults.addBusyTime(served.serviceTime);
+                if (series != null) {
+                    series.addCustomer(served.arrivalTime, served.serviceStartTime, served.departureTime);
+                }
+                if (recorder != null) {
+                    recorder.record(replication, served.serverId, 0, served.arrivalTime,
+                            served.serviceStartTime, served.serviceTime, served.departureTime);
+                }
 
                 // Free the server.
                 servers[departingServer].isBusy = false;
@@ -223,7 +261,7 @@ public class Q1 {
                     int availableServer = findAvailableServer(servers, activeServers);
                     if (availableServer != -1) {
                         nextCustomer.serviceStartTime = currentTime;
-                        nextCustomer.serviceTime = getExponential(mu);
+                        nextCustomer.serviceTime = getExponential(serviceRandom, mu);
                         nextCustomer.departureTime = currentTime + nextCustomer.serviceTime;
                         nextCustomer.serverId = availableServer;
 
@@ -249,6 +287,27 @@ public class Q1 {
             }
         }
 
+        if (series != null) {
+            // customers in service at the end have known waits; those still queued are
+            // censored at their wait so far
+            for (Server server : servers) {
+                if (server.isBusy) {
+                    Customer customer = server.currentCustomer;
+                    series.addCustomer(customer.arrivalTime, customer.serviceStartTime, customer.departureTime);
+                }
+            }
+            for (Customer customer : queue) {
+                series.addWaiting(customer.arrivalTime, currentTime);
+            }
+            series.endReplication();
+        }
+        return new PeriodResults[] {periodResults[0], periodResults[1], periodResults[2], entireDayResults};
+    }
+
+    static void printResults(PeriodResults[] results) {
+        PeriodResults[] periodResults = {results[0], results[1], results[2]};
+        PeriodResults entireDayResults = results[3];
+
         // Print results for each period
         System.out.println("\nSimulation Results (with changing servers and infinite queue):");
         System.out.println("--------------------------------------------------");
@@ -313,14 +372,35 @@ public class Q1 {
 
     public static void analyzeServerEffect(double lambda, double mu) {
         Q1 simulation = new Q1(lambda, mu);
-        simulation.runSimulation();
+        printResults(simulation.runSimulation(0, null));
     }
 
-    public static void main(String[] args) {
+    // Runs many replications into a time series at the given resolution (in hours) and
+    // writes it to <path>.csv and the columnar <path>.col
+    public static void collectTimeSeries(double lambda, double mu, int replications, double resolution, String path)
+            throws IOException {
+        Q1 simulation = new Q1(lambda, mu);
+        TimeSeriesCollector series = new TimeSeriesCollector(SIMULATION_TIME, resolution);
+        for (int i = 0; i < replications; i++) {
+            simulation.runSimulation(i, series);
+        }
+        series.writeCsv(path + ".csv");
+        series.writeColumns(path + ".col");
+        System.out.println("\nTime series (" + series.buckets() + " buckets, " + replications
+                + " replications) written to " + path + ".csv and " + path + ".col");
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("Seed: " + RngStreams.defaultSeed());
         double lambda = 40.0;  // arrival rate
         double mu = 15.0;      // service rate per server
 
         // Run the simulation with changing servers
         analyzeServerEffect(lambda, mu);
+
+        // Optional per-minute time series: java Q1 <output path without extension>
+        if (args.length > 0) {
+            collectTimeSeries(lambda, mu, 1000, 1.0 / 60.0, args[0]);
+        }
     }
 }
@@ -0,0 +1,525 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Random;
+
+// Q1 with a FIFO queue per server instead of one shared line: a router assigns each
+// arrival to a server on arrival and it stays there. The staffing follows Q1's schedule,
+// times `scale`, so the same model can be run with thousands of servers. Servers added at
+// hour 2 start empty; at hour 5 the customers of dropped servers, the one in service first,
+// are routed again as if arriving, keeping their arrival times. The next departure comes
+// from an indexed min-heap over the servers and JSQ keeps one over queue lengths, so no
+// step costs more than O(log c) and large server counts stay cheap.
+public class Q1Routed {
+    enum Routing {
+        JSQ,         // join the shortest queue (fewest customers at the server)
+        POWER_OF_D,  // shortest of d servers sampled at random
+        ROUND_ROBIN, // servers in turn
+        RANDOM       // uniformly random server
+    }
+
+    // Picks the server for an arrival among servers 0 .. active - 1. Routers that look at
+    // queue lengths are told every change.
+    interface Router {
+        int route();
+
+        void lengthChanged(int server);
+
+        void resize(int active);
+
+        static Router create(Routing type, int[] lengths, int choices, Random source) {
+            switch (type) {
+                case JSQ:
+                    return new ShortestQueue(lengths);
+                case POWER_OF_D:
+                    return new PowerOfChoices(lengths, choices, source);
+                case ROUND_ROBIN:
+                    return new RoundRobin();
+                case RANDOM:
+                    return new RandomServer(source);
+                default:
+                    throw new IllegalArgumentException("Unknown routing: " + type);
+            }
+        }
+    }
+
+    // Binary min-heap over items 0 .. size - 1 with keys that change in place; position[]
+    // finds an item's slot, so an update is O(log n). Equal keys go to the lower index.
+    static class IndexedMinHeap {
+        private final double[] key;
+        private final int[] heap;
+        private final int[] position;
+        private int size;
+
+        IndexedMinHeap(int capacity) {
+            key = new double[capacity];
+            heap = new int[capacity];
+            position = new int[capacity];
+        }
+
+        // Heap of items 0 .. size - 1 with their current keys
+        void reset(int size) {
+            this.size = size;
+            for (int i = 0; i < size; i++) {
+                heap[i] = i;
+                position[i] = i;
+            }
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+
+        int min() {
+            return heap[0];
+        }
+
+        double minKey() {
+            return key[heap[0]];
+        }
+
+        void update(int item, double value) {
+            double old = key[item];
+            key[item] = value;
+            if (item >= size) {
+                return; // not in the heap; the key is kept for the next reset
+            }
+            if (value < old) {
+                siftUp(position[item]);
+            } else {
+                siftDown(position[item]);
+            }
+        }
+
+        private boolean less(int a, int b) {
+            return key[a] < key[b] || (key[a] == key[b] && a < b);
+        }
+
+        private void siftUp(int slot) {
+            int item = heap[slot];
+            while (slot > 0) {
+                int parent = (slot - 1) / 2;
+                if (!less(item, heap[parent])) {
+                    break;
+                }
+                move(heap[parent], slot);
+                slot = parent;
+            }
+            move(item, slot);
+        }
+
+        private void siftDown(int slot) {
+            int item = heap[slot];
+            while (true) {
+                int child = 2 * slot + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && less(heap[child + 1], heap[child])) {
+                    child++;
+                }
+                if (!less(heap[child], item)) {
+                    break;
+                }
+                move(heap[child], slot);
+                slot = child;
+            }
+            move(item, slot);
+        }
+
+        private void move(int item, int slot) {
+            heap[slot] = item;
+            position[item] = slot;
+        }
+    }
+
+    static class ShortestQueue implements Router {
+        private final int[] lengths;
+        private final IndexedMinHeap heap;
+
+        ShortestQueue(int[] lengths) {
+            this.lengths = lengths;
+            this.heap = new IndexedMinHeap(lengths.length);
+        }
+
+        public int route() {
+            return heap.min();
+        }
+
+        public void lengthChanged(int server) {
+            heap.update(server, lengths[server]);
+        }
+
+        public void resize(int active) {
+            for (int s = 0; s < lengths.length; s++) {
+                heap.update(s, lengths[s]);
+            }
+            heap.reset(active);
+        }
+    }
+
+    // Samples d servers with replacement and takes the shortest, the first on ties
+    static class PowerOfChoices implements Router {
+        private final int[] lengths;
+        private final int choices;
+        private final Random source;
+        private int active;
+
+        PowerOfChoices(int[] lengths, int choices, Random source) {
+            this.lengths = lengths;
+            this.choices = choices;
+            this.source = source;
+        }
+
+        public int route() {
+            int best = source.nextInt(active);
+            for (int i = 1; i < choices; i++) {
+                int candidate = source.nextInt(active);
+                if (lengths[candidate] < lengths[best]) {
+                    best = candidate;
+                }
+            }
+            return best;
+        }
+
+        public void lengthChanged(int server) {
+        }
+
+        public void resize(int active) {
+            this.active = active;
+        }
+    }
+
+    static class RoundRobin implements Router {
+        private int next;
+        private int active;
+
+        public int route() {
+            int server = next;
+            next = (next + 1) % active;
+            return server;
+        }
+
+        public void lengthChanged(int server) {
+        }
+
+        public void resize(int active) {
+            this.active = active;
+            next = next % active;
+        }
+    }
+
+    static class RandomServer implements Router {
+        private final Random source;
+        private int active;
+
+        RandomServer(Random source) {
+            this.source = source;
+        }
+
+        public int route() {
+            return source.nextInt(active);
+        }
+
+        public void lengthChanged(int server) {
+        }
+
+        public void resize(int active) {
+            this.active = active;
+        }
+    }
+
+    // Per-server totals over the day
+    static class ServerResults {
+        int[] completedCustomers;
+        double[] totalWaitingTime;
+        double[] totalBusyTime;
+        double[] activeTime;
+
+        ServerResults(int servers) {
+            completedCustomers = new int[servers];
+            totalWaitingTime = new double[servers];
+            totalBusyTime = new double[servers];
+            activeTime = new double[servers];
+        }
+
+        double getAvgWaitingTime(int server) {
+            return completedCustomers[server] > 0 ? totalWaitingTime[server] / completedCustomers[server] : 0.0;
+        }
+
+        double getUtilizationRate(int server) {
+            return activeTime[server] > 0 ? totalBusyTime[server] / activeTime[server] : 0.0;
+        }
+    }
+
+    private RngStreams streams;
+    private double lambda; // arrival rate
+    private double mu;     // service rate per server
+    private int scale;     // servers per server of Q1's schedule
+    private Routing routing;
+    private int choices;   // d for POWER_OF_D
+    private int maxServers;
+    private ServerResults serverResults; // of the last replication
+    private long events;                 // of the last replication
+
+    public Q1Routed(double lambda, double mu, Routing routing) {
+        this(lambda, mu, 1, routing, 2, RngStreams.defaultStreams());
+    }
+
+    public Q1Routed(double lambda, double mu, int scale, Routing routing, int choices, RngStreams streams) {
+        this.streams = streams;
+        this.lambda = lambda;
+        this.mu = mu;
+        this.scale = scale;
+        this.routing = routing;
+        this.choices = choices;
+        this.maxServers = 4 * scale; // as in Q1
+    }
+
+    private static double getExponential(Random source, double rate) {
+        return -Math.log(1.0 - source.nextDouble()) / rate;
+    }
+
+    private int activeServers(double time) {
+        return Q1.getActiveServers(time) * scale;
+    }
+
+    ServerResults getServerResults() {
+        return serverResults;
+    }
+
+    long getEvents() {
+        return events;
+    }
+
+    // Same replication numbering and result layout as Q1.runSimulation; per-server totals
+    // are kept in getServerResults()
+    Q1.PeriodResults[] runSimulation(int replication) {
+        Random arrivalRandom = streams.stream(replication, RngStreams.ARRIVALS);
+        Random serviceRandom = streams.stream(replication, RngStreams.SERVICE);
+        Random routingRandom = streams.stream(replication, RngStreams.ROUTING);
+
+        Q1.PeriodResults[] periodResults = {
+            new Q1.PeriodResults(2.0), new Q1.PeriodResults(3.0), new Q1.PeriodResults(3.0)
+        };
+        Q1.PeriodResults entireDayResults = new Q1.PeriodResults(Q1.SIMULATION_TIME);
+        ServerResults perServer = new ServerResults(maxServers);
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ArrayDeque<Q1.Customer>[] queues = new ArrayDeque[maxServers];
+        Q1.Customer[] inService = new Q1.Customer[maxServers];
+        int[] lengths = new int[maxServers]; // waiting plus in service, per server
+        for (int s = 0; s < maxServers; s++) {
+            queues[s] = new ArrayDeque<>();
+        }
+        IndexedMinHeap departures = new IndexedMinHeap(maxServers);
+        for (int s = 0; s < maxServers; s++) {
+            departures.update(s, Double.MAX_VALUE);
+        }
+        departures.reset(maxServers);
+        Router router = Router.create(routing, lengths, choices, routingRandom);
+
+        double currentTime = 0.0;
+        int active = activeServers(currentTime);
+        router.resize(active);
+        int busy = 0;
+        int waiting = 0;
+        long eventCount = 0;
+        double nextArrival = getExponential(arrivalRandom, lambda);
+        double[] changes = {2.0, 5.0, Q1.SIMULATION_TIME};
+        int nextChange = 0;
+
+        while (currentTime < Q1.SIMULATION_TIME) {
+            double nextDeparture = departures.minKey();
+            double nextEventTime = Math.min(Math.min(nextArrival, nextDeparture), changes[nextChange]);
+
+            // Update metrics over the interval to the next event; schedule changes are
+            // events, so the interval lies in one period
+            double timeInterval = nextEventTime - currentTime;
+            int currentPeriod = Q1.getPeriod(currentTime);
+            periodResults[currentPeriod].addQueueLengthTime(waiting, timeInterval);
+            entireDayResults.addQueueLengthTime(waiting, timeInterval);
+            if (busy == active) {
+                periodResults[currentPeriod].addAllBusyTime(timeInterval);
+                entireDayResults.addAllBusyTime(timeInterval);
+            }
+            currentTime = nextEventTime;
+            eventCount++;
+
+            if (currentTime == changes[nextChange]) {
+                double periodStart = nextChange == 0 ? 0.0 : changes[nextChange - 1];
+                for (int s = 0; s < active; s++) {
+                    perServer.activeTime[s] += currentTime - periodStart;
+                }
+                nextChange++;
+                if (currentTime >= Q1.SIMULATION_TIME) {
+                    break;
+                }
+                int servers = activeServers(currentTime);
+                // Customers of dropped servers, the one in service first, are routed again
+                ArrayList<Q1.Customer> moved = new ArrayList<>();
+                for (int s = servers; s < active; s++) {
+                    if (inService[s] != null) {
+                        moved.add(inService[s]);
+                        inService[s] = null;
+                        departures.update(s, Double.MAX_VALUE);
+                        busy--;
+                    }
+                    waiting -= queues[s].size();
+                    moved.addAll(queues[s]);
+                    queues[s].clear();
+                    lengths[s] = 0;
+                }
+                active = servers;
+                router.resize(active);
+                for (Q1.Customer customer : moved) {
+                    int server = router.route();
+                    if (inService[server] == null) {
+                        busy++;
+                        startService(customer, server, currentTime, inService, departures, serviceRandom);
+                    } else {
+                        queues[server].addLast(customer);
+                        waiting++;
+                    }
+                    lengths[server]++;
+                    router.lengthChanged(server);
+                }
+            } else if (nextArrival <= nextDeparture) {
+                Q1.Customer customer = new Q1.Customer(currentTime);
+                int server = router.route();
+                if (inService[server] == null) {
+                    busy++;
+                    startService(customer, server, currentTime, inService, departures, serviceRandom);
+                } else {
+                    queues[server].addLast(customer);
+                    waiting++;
+                }
+                lengths[server]++;
+                router.lengthChanged(server);
+                nextArrival = currentTime + getExponential(arrivalRandom, lambda);
+            } else {
+                int server = departures.min();
+                Q1.Customer served = inService[server];
+                int departurePeriod = Q1.getPeriod(currentTime);
+                periodResults[departurePeriod].addCustomer(served);
+                entireDayResults.addCustomer(served);
+                periodResults[departurePeriod].addBusyTime(served.serviceTime);
+                entireDayResults.addBusyTime(served.serviceTime);
+                perServer.completedCustomers[server]++;
+                perServer.totalWaitingTime[server] += served.serviceStartTime - served.arrivalTime;
+                perServer.totalBusyTime[server] += served.serviceTime;
+
+                Q1.Customer nextCustomer = queues[server].pollFirst();
+                if (nextCustomer != null) {
+                    waiting--;
+                    startService(nextCustomer, server, currentTime, inService, departures, serviceRandom);
+                } else {
+                    inService[server] = null;
+                    departures.update(server, Double.MAX_VALUE);
+                    busy--;
+                }
+                lengths[server]--;
+                router.lengthChanged(server);
+            }
+        }
+
+        serverResults = perServer;
+        events = eventCount;
+        return new Q1.PeriodResults[] {periodResults[0], periodResults[1], periodResults[2], entireDayResults};
+    }
+
+    private void startService(Q1.Customer customer, int server, double currentTime, Q1.Customer[] inService,
+                              IndexedMinHeap departures, Random serviceRandom) {
+        customer.serviceStartTime = currentTime;
+        customer.serviceTime = getExponential(serviceRandom, mu);
+        customer.departureTime = currentTime + customer.serviceTime;
+        customer.serverId = server;
+        inService[server] = customer;
+        departures.update(server, customer.departureTime);
+    }
+
+    static void printServerResults(ServerResults results) {
+        System.out.printf("%-10s %-15s %-15s %-15s%n", "Server", "Customers", "Avg Wait Time", "Utilization");
+        for (int s = 0; s < results.completedCustomers.length; s++) {
+            System.out.printf("%-10d %-15d %-15.6f %-15.6f%n", s, results.completedCustomers[s],
+                    results.getAvgWaitingTime(s), results.getUtilizationRate(s));
+        }
+    }
+
+    // Waits per period and over the day for each policy next to the shared line of Q1, on
+    // the same arrival and service substreams, with the spread of the per-server average
+    // waits (largest minus smallest among the servers active all day, averaged over days)
+    public static void compareWithShared(double lambda, double mu, int replications) {
+        RngStreams streams = RngStreams.defaultStreams();
+        String[] labels = {"0-2 Wait", "2-5 Wait", "5-8 Wait", "Day Wait", "Day Queue Len"};
+        System.out.println("\nRouting policies vs shared queue, " + replications + " replications:");
+        System.out.println("--------------------------------------------------");
+        System.out.printf("%-15s %-15s %-15s %-15s %-15s %-15s %-15s%n",
+                "Routing", labels[0], labels[1], labels[2], labels[3], labels[4], "Wait Spread");
+
+        Routing[] policies = Routing.values();
+        for (int r = -1; r < policies.length; r++) {
+            Q1 shared = new Q1(lambda, mu, streams);
+            Q1Routed routed = r >= 0 ? new Q1Routed(lambda, mu, 1, policies[r], 2, streams) : null;
+            double[] sum = new double[labels.length];
+            double spread = 0.0;
+            for (int i = 0; i < replications; i++) {
+                Q1.PeriodResults[] results = routed != null ? routed.runSimulation(i) : shared.runSimulation(i, null);
+                for (int p = 0; p < 4; p++) {
+                    sum[p] += results[p].getAvgWaitingTime();
+                }
+                sum[4] += results[3].getAvgQueueLength();
+                if (routed != null) {
+                    // servers 0 and 1 are active all day
+                    ServerResults perServer = routed.getServerResults();
+                    double low = Math.min(perServer.getAvgWaitingTime(0), perServer.getAvgWaitingTime(1));
+                    double high = Math.max(perServer.getAvgWaitingTime(0), perServer.getAvgWaitingTime(1));
+                    spread += high - low;
+                }
+            }
+            String name = r < 0 ? "Shared queue" : policies[r] == Routing.POWER_OF_D ? "POWER_OF_2" : policies[r].toString();
+            System.out.printf("%-15s %-15.6f %-15.6f %-15.6f %-15.6f %-15.6f %-15s%n", name,
+                    sum[0] / replications, sum[1] / replications, sum[2] / replications, sum[3] / replications,
+                    sum[4] / replications, r < 0 ? "-" : String.format("%.6f", spread / replications));
+        }
+    }
+
+    // Cost per event as the schedule is scaled up to thousands of servers, with lambda
+    // scaled alike so that the load per server stays as in Q1
+    public static void benchmarkScaling(double lambda, double mu, int[] scales) {
+        System.out.println("\nCost per event (ns) as servers scale:");
+        System.out.println("--------------------------------------------------");
+        System.out.printf("%-15s", "Max Servers");
+        for (Routing routing : Routing.values()) {
+            System.out.printf(" %-15s", routing == Routing.POWER_OF_D ? "POWER_OF_2" : routing);
+        }
+        System.out.println();
+        for (int scale : scales) {
+            System.out.printf("%-15d", 4 * scale);
+            for (Routing routing : Routing.values()) {
+                Q1Routed simulation = new Q1Routed(lambda * scale, mu, scale, routing, 2, RngStreams.defaultStreams());
+                int replications = Math.max(1, 200 / scale);
+                simulation.runSimulation(0); // warm-up
+                long start = System.nanoTime();
+                long events = 0;
+                for (int i = 0; i < replications; i++) {
+                    simulation.runSimulation(i);
+                    events += simulation.getEvents();
+                }
+                System.out.printf(" %-15.1f", (double) (System.nanoTime() - start) / events);
+            }
+            System.out.println();
+        }
+    }
+
+    public static void main(String[] args) {
+        double lambda = 40.0;  // arrival rate
+        double mu = 15.0;      // service rate per server
+
+        System.out.println("Seed: " + RngStreams.defaultSeed());
+        Q1Routed simulation = new Q1Routed(lambda, mu, Routing.JSQ);
+        Q1.printResults(simulation.runSimulation(0));
+        System.out.println("\nPer-server results (JSQ), entire day:");
+        printServerResults(simulation.getServerResults());
+        compareWithShared(lambda, mu, 5000);
+        benchmarkScaling(lambda, mu, new int[] {1, 10, 100, 1000});
+    }
+}
@@ -0,0 +1,639 @@
+import java.util.Arrays;
+
+// Deterministic transient solution of Q1 with exponential service, following Q1's rules
+// step by step. A state is the set of busy servers, the number waiting and, while the
+// last server is busy, the period its customer arrived in. Q1 reads the schedule at the
+// start of each event step, so the first event after a change still sees the old number
+// of servers, and a second, pending layer of states holds the chain until that event. An
+// event sees `seen` servers: departures come from busy servers below it, arrivals take
+// the lowest idle one and otherwise wait, a departure hands its server to the head of the
+// line, and afterwards customers of servers at or beyond it go to the back of the line.
+// So servers added at hour 2 only pick up arrivals and heads at departures, and at hour 5
+// the customer of the last server is frozen there (neither served nor waiting) after the
+// first event and rejoins the line after the second. c(t) is constant between its
+// changes, so on each piece the forward equations are solved exactly by uniformization:
+// with Lambda = lambda + c*mu and P = I + Q / Lambda, p(t + h) = sum_k Poisson(k;
+// Lambda*h) p P^k, and the integral of p over the step is (1 / Lambda) sum_k
+// P(Poisson(Lambda*h) > k) p P^k. Waits are followed per arrival: each arrival adds its
+// state's probability to a tagged chain of its period (the customers ahead of it and the
+// busy servers, then in service), whose mass integrates to the hours those customers wait
+// and spend in the system, and the age of the last server's customer, weighted by the
+// state probability, adds the aborted service and frozen time to its wait when it rejoins
+// the line. Period averages are built from these integrals up to closing, so no time
+// discretization error enters. The line is cut at maxWaiting and the cut grown until the
+// probability there is negligible.
+public class Q1Transient {
+    private static final double EPSILON = 1e-12; // Poisson tail and truncation mass tolerated
+    private static final double[] BOUNDS = {0.0, 2.0, 5.0, Q1.SIMULATION_TIME}; // schedule changes
+    private static final int PERIODS = 3;
+
+    // rewards integrated over each step
+    private static final int QUEUE = 0;
+    private static final int BUSY = 1;
+    private static final int ALL_BUSY = 2;        // charged to the current period
+    private static final int ALL_BUSY_BEFORE = 3; // charged to the one before, as Q1 does until the first event
+    private static final int WAITING = 4;         // + arrival period
+    private static final int IN_SYSTEM = WAITING + PERIODS;
+    private static final int REWARDS = IN_SYSTEM + PERIODS;
+
+    // Averages over one period
+    static class PeriodMeasures {
+        double avgQueueLength;
+        double probAllBusy;    // Q1's accounting: time until an event is charged to the period of its start
+        double utilization;
+        double avgWaitingTime; // per arrival in the period, counting waits up to closing
+        double avgSystemTime;  // likewise for the time in the system
+    }
+
+    // Instantaneous expected queue length and P(all busy) at the grid times, the average
+    // queue length over each grid step, and each period's averages
+    static class Solution {
+        double[] times;
+        double[] expectedQueue;
+        double[] probAllBusy;
+        double[] stepQueue; // average over (times[i - 1], times[i]); stepQueue[0] unused
+        PeriodMeasures[] periods; // 0-2, 2-5, 5-8 hours and the entire day
+        int maxWaiting;
+        double truncatedMass; // largest probability of a full line on the grid
+    }
+
+    // State probabilities, the age of the last server's customer weighted by them, and
+    // each arrival period's tagged customers: waiting, by busy servers and customers
+    // ahead, or in service (the last entry)
+    private static class Vectors {
+        final double[] system;
+        final double[] age;
+        final double[][] tagged;
+
+        Vectors(int systemStates, int taggedStates) {
+            system = new double[systemStates];
+            age = new double[systemStates];
+            tagged = new double[PERIODS][taggedStates];
+        }
+
+        void clear() {
+            Arrays.fill(system, 0.0);
+            Arrays.fill(age, 0.0);
+            for (double[] customers : tagged) {
+                Arrays.fill(customers, 0.0);
+            }
+        }
+
+        void add(Vectors other, double weight) {
+            for (int i = 0; i < system.length; i++) {
+                system[i] += weight * other.system[i];
+                age[i] += weight * other.age[i];
+            }
+            for (int p = 0; p < PERIODS; p++) {
+                for (int i = 0; i < tagged[p].length; i++) {
+                    tagged[p][i] += weight * other.tagged[p][i];
+                }
+            }
+        }
+    }
+
+    private double lambda; // arrival rate
+    private double mu;     // service rate per server
+    private int maxServers;
+    private int top;       // the last server, the only one the schedule switches off
+    private int lowMask;   // the servers below it
+    private int slots;     // busy sets: top idle, then top busy for each arrival period
+
+    public Q1Transient(double lambda, double mu) {
+        this.lambda = lambda;
+        this.mu = mu;
+        for (int p = 0; p < PERIODS; p++) {
+            maxServers = Math.max(maxServers, Q1.getActiveServers(BOUNDS[p]));
+        }
+        for (int p = 1; p < PERIODS; p++) {
+            int previous = Q1.getActiveServers(BOUNDS[p - 1]);
+            int servers = Q1.getActiveServers(BOUNDS[p]);
+            if (servers < previous && (previous != maxServers || servers != maxServers - 1)) {
+                throw new IllegalStateException("Only switching off the last server is modelled, not "
+                        + previous + " -> " + servers + " servers");
+            }
+        }
+        top = maxServers - 1;
+        lowMask = (1 << top) - 1;
+        slots = (PERIODS + 1) << top;
+    }
+
+    // Solves from an empty system, reporting the instantaneous measures every `step` hours
+    // (rounded so that the schedule changes fall on the grid)
+    Solution solve(double step) {
+        int maxWaiting = 64;
+        while (true) {
+            Solution solution = solve(step, maxWaiting);
+            if (solution.truncatedMass < EPSILON) {
+                return solution;
+            }
+            maxWaiting *= 2;
+        }
+    }
+
+    private Solution solve(double step, int maxWaiting) {
+        int[] stepsPerPeriod = new int[PERIODS];
+        int gridPoints = 1;
+        for (int p = 0; p < PERIODS; p++) {
+            stepsPerPeriod[p] = (int) Math.ceil((BOUNDS[p + 1] - BOUNDS[p]) / step - 1e-9);
+            gridPoints += stepsPerPeriod[p];
+        }
+
+        Solution solution = new Solution();
+        solution.times = new double[gridPoints];
+        solution.expectedQueue = new double[gridPoints];
+        solution.probAllBusy = new double[gridPoints];
+        solution.stepQueue = new double[gridPoints];
+        solution.periods = new PeriodMeasures[4];
+        solution.maxWaiting = maxWaiting;
+
+        // system state (slot, q) is at slot * width + q, tagged (busy, k ahead) at
+        // busy * width + k, each plus a layer's size while pending a schedule change
+        int width = maxWaiting + 1;
+        int systemLayer = slots * width;
+        int taggedLayer = (1 << maxServers) * width;
+        Vectors probabilities = new Vectors(2 * systemLayer, 2 * taggedLayer + 1);
+        probabilities.system[0] = 1.0; // empty at opening
+        Vectors power = new Vectors(2 * systemLayer, 2 * taggedLayer + 1);
+        Vectors next = new Vectors(2 * systemLayer, 2 * taggedLayer + 1);
+        double[] stepRewards = new double[REWARDS];
+        double[] dayRewards = new double[REWARDS];
+        double[] allBusyHours = new double[PERIODS];
+        double busyServerHours = 0.0;
+        int point = 0;
+
+        int previous = Q1.getActiveServers(0.0);
+        for (int p = 0; p < PERIODS; p++) {
+            int servers = Q1.getActiveServers(BOUNDS[p]);
+            if (servers != previous) {
+                // mass still pending an earlier change (no event for a whole period) joins in
+                pend(probabilities.system, systemLayer);
+                pend(probabilities.age, systemLayer);
+                for (double[] customers : probabilities.tagged) {
+                    pend(customers, taggedLayer);
+                }
+            }
+            double uniformRate = lambda + Math.max(servers, previous) * mu;
+            double h = (BOUNDS[p + 1] - BOUNDS[p]) / stepsPerPeriod[p];
+            double[] weights = poissonWeights(uniformRate * h);
+            double[] periodRewards = new double[REWARDS];
+
+            for (int s = 0; s < stepsPerPeriod[p]; s++) {
+                // p P^k for k = 0, 1, ..., accumulating the state at t + h and the rewards
+                Vectors swap = power;
+                power = probabilities;
+                probabilities = swap;
+                probabilities.clear();
+                Arrays.fill(stepRewards, 0.0);
+                double tail = 1.0; // P(Poisson > k)
+                for (int k = 0; k < weights.length; k++) {
+                    tail = Math.max(tail - weights[k], 0.0);
+                    probabilities.add(power, weights[k]);
+                    accumulate(power, tail / uniformRate, stepRewards, servers, previous, width);
+                    if (k + 1 < weights.length) {
+                        uniformStep(power, next, p, servers, previous, uniformRate, width);
+                        swap = power;
+                        power = next;
+                        next = swap;
+                    }
+                }
+                for (int r = 0; r < REWARDS; r++) {
+                    periodRewards[r] += stepRewards[r];
+                }
+
+                point++;
+                solution.times[point] = BOUNDS[p] + (s + 1) * h;
+                solution.expectedQueue[point] = expectedWaiting(probabilities.system, width);
+                solution.probAllBusy[point] = probAllBusy(probabilities.system, servers, previous, width, null);
+                solution.stepQueue[point] = stepRewards[QUEUE] / h;
+                for (int i = maxWaiting; i < probabilities.system.length; i += width) {
+                    solution.truncatedMass = Math.max(solution.truncatedMass, probabilities.system[i]);
+                }
+            }
+
+            double duration = BOUNDS[p + 1] - BOUNDS[p];
+            PeriodMeasures measures = new PeriodMeasures();
+            measures.avgQueueLength = periodRewards[QUEUE] / duration;
+            measures.utilization = periodRewards[BUSY] / (servers * duration);
+            solution.periods[p] = measures;
+            allBusyHours[p] += periodRewards[ALL_BUSY];
+            if (p > 0) {
+                allBusyHours[p - 1] += periodRewards[ALL_BUSY_BEFORE];
+            }
+            for (int r = 0; r < REWARDS; r++) {
+                dayRewards[r] += periodRewards[r];
+            }
+            busyServerHours += periodRewards[BUSY];
+            if (p == PERIODS - 1) {
+                // Q1 charges the interval from the last event before closing to the one
+                // after it in full: the expected time to the next event in each state
+                double[] overshoot = new double[2];
+                probAllBusy(probabilities.system, servers, previous, width, overshoot);
+                allBusyHours[p] += overshoot[0];
+                if (p > 0) {
+                    allBusyHours[p - 1] += overshoot[1];
+                }
+            }
+            previous = servers;
+        }
+
+        for (int p = 0; p < PERIODS; p++) {
+            double duration = BOUNDS[p + 1] - BOUNDS[p];
+            PeriodMeasures measures = solution.periods[p];
+            measures.probAllBusy = allBusyHours[p] / duration;
+            measures.avgWaitingTime = dayRewards[WAITING + p] / (lambda * duration);
+            measures.avgSystemTime = dayRewards[IN_SYSTEM + p] / (lambda * duration);
+        }
+
+        // The entire day weights each period by its length, as Q1's day totals do
+        PeriodMeasures day = new PeriodMeasures();
+        for (int p = 0; p < PERIODS; p++) {
+            double duration = BOUNDS[p + 1] - BOUNDS[p];
+            day.avgQueueLength += solution.periods[p].avgQueueLength * duration / Q1.SIMULATION_TIME;
+            day.probAllBusy += allBusyHours[p] / Q1.SIMULATION_TIME;
+            day.avgWaitingTime += dayRewards[WAITING + p] / (lambda * Q1.SIMULATION_TIME);
+            day.avgSystemTime += dayRewards[IN_SYSTEM + p] / (lambda * Q1.SIMULATION_TIME);
+        }
+        // Total server-hours = (2 hours * 2) + (3 hours * 4) + (3 hours * 3) = 25, as in Q1
+        day.utilization = busyServerHours / 25.0;
+        solution.periods[3] = day;
+        return solution;
+    }
+
+    // Moves the current layer into the pending one at a schedule change
+    private static void pend(double[] vector, int layerSize) {
+        for (int i = 0; i < layerSize; i++) {
+            vector[layerSize + i] += vector[i];
+            vector[i] = 0.0;
+        }
+    }
+
+    private int origin(int slot) {
+        return (slot >> top) - 1; // -1 while the last server is idle
+    }
+
+    private int busySet(int slot) {
+        return origin(slot) < 0 ? slot : (slot & lowMask) | 1 << top;
+    }
+
+    // Adds weight times the rewards of the vectors: the line, busy servers and P(all
+    // busy) of the system, the hours of each period's customers waiting and in the
+    // system, and the age of the last server's customer at the rate it rejoins the line
+    private void accumulate(Vectors vectors, double weight, double[] rewards, int servers, int previous, int width) {
+        for (int layer = 0; layer < 2; layer++) {
+            int seen = layer == 0 ? servers : previous;
+            int seenMask = (1 << seen) - 1;
+            for (int slot = 0; slot < slots; slot++) {
+                int origin = origin(slot);
+                int busy = Integer.bitCount(busySet(slot) & seenMask);
+                boolean frozen = origin >= 0 && top >= seen;
+                for (int q = 0; q < width; q++) {
+                    int state = (layer * slots + slot) * width + q;
+                    double mass = vectors.system[state];
+                    if (mass == 0.0) {
+                        continue;
+                    }
+                    rewards[QUEUE] += weight * q * mass;
+                    rewards[BUSY] += weight * busy * mass;
+                    if (busy == seen) {
+                        rewards[layer == 0 ? ALL_BUSY : ALL_BUSY_BEFORE] += weight * mass;
+                    }
+                    if (frozen) {
+                        double aborted = weight * vectors.age[state] * (lambda + busy * mu);
+                        rewards[WAITING + origin] += aborted;
+                        rewards[IN_SYSTEM + origin] += aborted;
+                    }
+                }
+            }
+        }
+        for (int p = 0; p < PERIODS; p++) {
+            double[] customers = vectors.tagged[p];
+            double waiting = 0.0;
+            for (int i = 0; i < customers.length - 1; i++) {
+                waiting += customers[i];
+            }
+            rewards[WAITING + p] += weight * waiting;
+            rewards[IN_SYSTEM + p] += weight * (waiting + customers[customers.length - 1]);
+        }
+    }
+
+    // One step of the uniformized chains: next = current P. Every event leads to the current
+    // layer. A full line turns arrivals away, which only matters while the mass there is
+    // above EPSILON, and the cut is then grown.
+    private void uniformStep(Vectors current, Vectors next, int period, int servers, int previous,
+                             double uniformRate, int width) {
+        next.clear();
+        double arrival = lambda / uniformRate;
+        double departure = mu / uniformRate;
+        for (int layer = 0; layer < 2; layer++) {
+            int seen = layer == 0 ? servers : previous; // servers the event step sees
+            int seenMask = (1 << seen) - 1;
+            // a customer taking the last server from the line arrived before the last event,
+            // taken as in that event's period: only off for a customer of hours 0-2 still
+            // waiting at hour 5
+            int headOrigin = layer == 0 ? period : period - 1;
+            for (int slot = 0; slot < slots; slot++) {
+                int origin = origin(slot);
+                int busySet = busySet(slot);
+                int idle = ~busySet & seenMask;
+                for (int q = 0; q < width; q++) {
+                    int state = (layer * slots + slot) * width + q;
+                    double mass = current.system[state];
+                    double age = current.age[state];
+                    if (mass == 0.0 && age == 0.0) {
+                        continue;
+                    }
+                    double leaving = 0.0;
+                    if (idle != 0) {
+                        int server = Integer.numberOfTrailingZeros(idle);
+                        settle(next, mass * arrival, age * arrival, busySet | 1 << server, q,
+                                server == top ? period : origin, seen, width);
+                        next.tagged[period][2 * (1 << maxServers) * width] += mass * arrival;
+                        leaving += arrival;
+                    } else if (q + 1 < width) {
+                        settle(next, mass * arrival, age * arrival, busySet, q + 1, origin, seen, width);
+                        next.tagged[period][(busySet & seenMask) * width + q] += mass * arrival;
+                        leaving += arrival;
+                    }
+                    for (int busy = busySet & seenMask; busy != 0; busy &= busy - 1) {
+                        int server = Integer.numberOfTrailingZeros(busy);
+                        int after = busySet & ~(1 << server);
+                        int afterOrigin = server == top ? -1 : origin;
+                        double afterAge = server == top ? 0.0 : age;
+                        int afterQueue = q;
+                        if (q > 0) {
+                            int start = Integer.numberOfTrailingZeros(~after & seenMask);
+                            after |= 1 << start;
+                            afterQueue = q - 1;
+                            if (start == top) {
+                                afterOrigin = headOrigin;
+                                afterAge = 0.0;
+                            }
+                        }
+                        settle(next, mass * departure, afterAge * departure, after, afterQueue, afterOrigin, seen,
+                                width);
+                        leaving += departure;
+                    }
+                    next.system[state] += mass * (1.0 - leaving);
+                    if (origin >= 0) {
+                        next.age[state] += age * (1.0 - leaving) + mass / uniformRate;
+                    }
+                    if (origin >= 0 && top >= seen) {
+                        // a frozen customer counts as in service but does not finish
+                        next.tagged[origin][2 * (1 << maxServers) * width] += mass * departure;
+                    }
+                }
+            }
+        }
+
+        // tagged customers: waiting with `k` ahead, then in service
+        int taggedLayer = (1 << maxServers) * width;
+        int served = 2 * taggedLayer;
+        for (int p = 0; p < PERIODS; p++) {
+            double[] from = current.tagged[p];
+            double[] to = next.tagged[p];
+            for (int layer = 0; layer < 2; layer++) {
+                int seen = layer == 0 ? servers : previous;
+                int seenMask = (1 << seen) - 1;
+                for (int busySet = 0; busySet < 1 << maxServers; busySet++) {
+                    int idle = ~busySet & seenMask;
+                    int afterArrival = (idle != 0 ? busySet | Integer.lowestOneBit(idle) : busySet) & seenMask;
+                    for (int k = 0; k < width; k++) {
+                        int state = layer * taggedLayer + busySet * width + k;
+                        double mass = from[state];
+                        if (mass == 0.0) {
+                            continue;
+                        }
+                        to[afterArrival * width + k] += mass * arrival;
+                        double leaving = arrival;
+                        for (int busy = busySet & seenMask; busy != 0; busy &= busy - 1) {
+                            int after = busySet & ~Integer.lowestOneBit(busy);
+                            int start = Integer.numberOfTrailingZeros(~after & seenMask);
+                            if (k > 0) {
+                                to[((after | 1 << start) & seenMask) * width + k - 1] += mass * departure;
+                            } else {
+                                to[served] += mass * departure;
+                            }
+                            leaving += departure;
+                        }
+                        to[state] += mass * (1.0 - leaving);
+                    }
+                }
+            }
+            to[served] += from[served] * (1.0 - departure);
+        }
+    }
+
+    // Adds `mass` to the current-layer state after an event, once the customers of servers
+    // at or beyond `seen` have gone to the back of the line, the last server's into the
+    // tagged chain of its arrival period. `age` follows that customer while it stays on.
+    private void settle(Vectors next, double mass, double age, int busySet, int q, int origin, int seen,
+                        int width) {
+        int dropped = busySet & ~((1 << seen) - 1);
+        if (dropped != 0) {
+            busySet &= ~dropped;
+            if ((dropped >> top & 1) != 0) {
+                int ahead = Math.min(q + Integer.bitCount(dropped) - 1, width - 1);
+                next.tagged[origin][busySet * width + ahead] += mass;
+                next.tagged[origin][2 * (1 << maxServers) * width] -= mass; // no longer in service
+                origin = -1;
+            }
+            q = Math.min(q + Integer.bitCount(dropped), width - 1);
+        }
+        int slot = origin < 0 ? busySet : (origin + 1) << top | (busySet & lowMask);
+        int state = slot * width + q;
+        next.system[state] += mass;
+        if (origin >= 0) {
+            next.age[state] += age;
+        }
+    }
+
+    // Poisson(mean) probabilities up to where the remaining tail is below EPSILON. Steps
+    // are short, so exp(-mean) does not underflow.
+    private static double[] poissonWeights(double mean) {
+        if (mean > 500.0) {
+            throw new IllegalArgumentException("Step too long for uniformization: Lambda*h = " + mean);
+        }
+        double[] weights = new double[16];
+        double weight = Math.exp(-mean);
+        double cumulative = 0.0;
+        int k = 0;
+        while (true) {
+            if (k == weights.length) {
+                weights = Arrays.copyOf(weights, k * 2);
+            }
+            weights[k] = weight;
+            cumulative += weight;
+            if (1.0 - cumulative < EPSILON && k >= mean) {
+                return Arrays.copyOf(weights, k + 1);
+            }
+            k++;
+            weight *= mean / k;
+        }
+    }
+
+    private static double expectedWaiting(double[] distribution, int width) {
+        double waiting = 0.0;
+        for (int i = 0; i < distribution.length; i++) {
+            waiting += (i % width) * distribution[i];
+        }
+        return waiting;
+    }
+
+    // P(all servers the next event sees are busy); with `overshoot`, also adds the expected
+    // all-busy time until that event, by layer
+    private double probAllBusy(double[] system, int servers, int previous, int width, double[] overshoot) {
+        double allBusy = 0.0;
+        for (int layer = 0; layer < 2; layer++) {
+            int seen = layer == 0 ? servers : previous;
+            for (int slot = 0; slot < slots; slot++) {
+                int busy = Integer.bitCount(busySet(slot) & ((1 << seen) - 1));
+                if (busy < seen) {
+                    continue;
+                }
+                for (int q = 0; q < width; q++) {
+                    double mass = system[(layer * slots + slot) * width + q];
+                    allBusy += mass;
+                    if (overshoot != null) {
+                        overshoot[layer] += mass / (lambda + busy * mu);
+                    }
+                }
+            }
+        }
+        return allBusy;
+    }
+
+    static void printResults(Solution solution) {
+        String[] labels = {"0-2 hours", "2-5 hours", "5-8 hours", "0-8 hours"};
+        System.out.println("\nTransient Solution (uniformization, waiting line cut at " + solution.maxWaiting + "):");
+        System.out.println("--------------------------------------------------");
+        System.out.printf("%-20s %-15s %-15s %-15s %-15s %-15s%n",
+                "Period", "Avg Wait Time", "Avg Sys Time", "Utilization", "Avg Queue Len", "P(All Busy)");
+        for (int p = 0; p < labels.length; p++) {
+            PeriodMeasures measures = solution.periods[p];
+            System.out.printf("%-20s %-15.6f %-15.6f %-15.6f %-15.6f %-15.6f%n", labels[p],
+                    measures.avgWaitingTime, measures.avgSystemTime, measures.utilization,
+                    measures.avgQueueLength, measures.probAllBusy);
+        }
+
+        System.out.println("\nOver the day:");
+        System.out.printf("%-10s %-15s %-15s%n", "Hour", "E[Queue]", "P(All Busy)");
+        double nextReport = 0.0;
+        for (int i = 0; i < solution.times.length; i++) {
+            if (solution.times[i] >= nextReport - 1e-9) {
+                System.out.printf("%-10.2f %-15.6f %-15.6f%n",
+                        solution.times[i], solution.expectedQueue[i], solution.probAllBusy[i]);
+                nextReport += 0.5;
+            }
+        }
+    }
+
+    // Compares the solution with detailed Q1 replications; |z| above 3 is flagged. Hourly
+    // queue lengths, busy servers and the hours waited and spent in the system by each
+    // hour's arrivals (up to closing) come from a TimeSeriesCollector, which splits
+    // intervals exactly at the hour, so they measure what the solver computes; a period's
+    // average wait is its arrivals' hours over lambda times its length. P(all busy) is Q1's
+    // own, which the solver reproduces.
+    public static void compareWithSimulation(double lambda, double mu, Solution solution, int replications) {
+        Q1 simulation = new Q1(lambda, mu);
+        int hours = (int) Q1.SIMULATION_TIME;
+        String[] labels = {"0-2 hours", "2-5 hours", "5-8 hours"};
+        String[] metrics = {"Avg Queue Len", "Utilization", "P(All Busy)", "Avg Wait Time", "Avg Sys Time"};
+        double[][] sum = new double[3][metrics.length];
+        double[][] sumSquares = new double[3][metrics.length];
+        double[] hourSum = new double[hours];
+        double[] hourSumSquares = new double[hours];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < replications; i++) {
+            TimeSeriesCollector series = new TimeSeriesCollector(Q1.SIMULATION_TIME, 1.0);
+            Q1.PeriodResults[] results = simulation.runSimulation(i, series);
+            double[] periodQueue = new double[3];
+            double[] periodBusy = new double[3];
+            double[] periodWait = new double[3];
+            double[] periodSystem = new double[3];
+            for (int h = 0; h < hours; h++) {
+                int p = Q1.getPeriod(h);
+                double queue = series.meanQueueLength(h);
+                periodQueue[p] += queue / (BOUNDS[p + 1] - BOUNDS[p]);
+                periodBusy[p] += series.meanBusyServers(h) / (BOUNDS[p + 1] - BOUNDS[p]);
+                periodWait[p] += series.meanWaitHours(h) / (lambda * (BOUNDS[p + 1] - BOUNDS[p]));
+                periodSystem[p] += series.meanSystemHours(h) / (lambda * (BOUNDS[p + 1] - BOUNDS[p]));
+                hourSum[h] += queue;
+                hourSumSquares[h] += queue * queue;
+            }
+            for (int p = 0; p < 3; p++) {
+                double[] values = {
+                    periodQueue[p],
+                    periodBusy[p] / Q1.getActiveServers(BOUNDS[p]),
+                    results[p].getProbAllBusy(),
+                    periodWait[p],
+                    periodSystem[p]
+                };
+                for (int m = 0; m < metrics.length; m++) {
+                    sum[p][m] += values[m];
+                    sumSquares[p][m] += values[m] * values[m];
+                }
+            }
+        }
+        double simulationMillis = (System.nanoTime() - start) / 1e6;
+
+        System.out.println("\nTransient solution vs " + replications + " simulated replications:");
+        System.out.println("--------------------------------------------------");
+        System.out.printf("%-12s %-15s %-15s %-15s %-10s %-10s%n", "Period", "Metric", "Simulated", "Transient", "Rel Diff", "z");
+        for (int p = 0; p < 3; p++) {
+            PeriodMeasures measures = solution.periods[p];
+            double[] solved = {
+                measures.avgQueueLength, measures.utilization, measures.probAllBusy,
+                measures.avgWaitingTime, measures.avgSystemTime
+            };
+            for (int m = 0; m < metrics.length; m++) {
+                double z = zStatistic(solved[m], sum[p][m], sumSquares[p][m], replications);
+                double mean = sum[p][m] / replications;
+                System.out.printf("%-12s %-15s %-15.6f %-15.6f %-10.4f %-10.2f%s%n",
+                        m == 0 ? labels[p] : "", metrics[m], mean, solved[m], (solved[m] - mean) / mean, z,
+                        Math.abs(z) > 3 ? " <--" : "");
+            }
+        }
+
+        System.out.println("\nHourly average queue length:");
+        System.out.printf("%-10s %-15s %-15s %-10s%n", "Hour", "Simulated", "Transient", "z");
+        int stepsPerHour = (solution.times.length - 1) / hours;
+        for (int h = 0; h < hours; h++) {
+            double solved = 0.0;
+            for (int s = 1; s <= stepsPerHour; s++) {
+                solved += solution.stepQueue[h * stepsPerHour + s] / stepsPerHour;
+            }
+            double z = zStatistic(solved, hourSum[h], hourSumSquares[h], replications);
+            System.out.printf("%-10s %-15.6f %-15.6f %-10.2f%s%n", h + "-" + (h + 1),
+                    hourSum[h] / replications, solved, z, Math.abs(z) > 3 ? " <--" : "");
+        }
+        System.out.printf("%nSimulation: %.1f ms%n", simulationMillis);
+    }
+
+    // Distance of `value` from the mean of the replications in standard errors
+    private static double zStatistic(double value, double sum, double sumSquares, int replications) {
+        double mean = sum / replications;
+        double variance = (sumSquares - replications * mean * mean) / (replications - 1) / replications;
+        return (value - mean) / Math.sqrt(variance);
+    }
+
+    public static void main(String[] args) {
+        double lambda = 40.0;  // arrival rate
+        double mu = 15.0;      // service rate per server
+
+        System.out.println("Seed: " + RngStreams.defaultSeed());
+        Q1Transient solver = new Q1Transient(lambda, mu);
+        // the period measures do not depend on the grid; half-hourly is what gets printed
+        for (int i = 0; i < 3; i++) {
+            solver.solve(0.5); // warm-up
+        }
+        long start = System.nanoTime();
+        Solution solution = solver.solve(0.5);
+        double solveMillis = (System.nanoTime() - start) / 1e6;
+        printResults(solution);
+        System.out.printf("%nSolved in %.2f ms (half-hour grid, truncation mass %.1e)%n",
+                solveMillis, solution.truncatedMass);
+        compareWithSimulation(lambda, mu, solution, 20000);
+    }
+}
@@ -1,10 +1,14 @@
 import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
 
 public class Q2 {
-    private static final double SIMULATION_TIME = 1000.0; // hours
+    static final double SIMULATION_TIME = 1000.0; // hours
     private static final int SIMULATIONS = 1000; // number of simulation runs
 
     // class for storing the details of jobs arriving at the server
@@ -14,9 +18,12 @@ public class Q2 {
         double serviceStartTime;
         double serviceTime;
         double departureTime;
+        double remainingService; // service still owed, used when a customer is preempted
+        int priorityClass;
 
-        Customer(double arrivalTime) {
+        Customer(double arrivalTime, int priorityClass) {
             this.arrivalTime = arrivalTime;
+            this.priorityClass = priorityClass;
         }
     }
 
@@ -29,45 +36,183 @@ public class Q2 {
         double avgQueueLength;
         double probSystemFull;
         double probRejection;
+        int replications; // replications averaged, fewer than SIMULATIONS if cancelled
+        // per priority class
+        double[] classWaitingTime;
+        double[] classSystemTime;
+        double[] classProbRejection;
+
+        SimulationResults(int classes) {
+            classWaitingTime = new double[classes];
+            classSystemTime = new double[classes];
+            classProbRejection = new double[classes];
+        }
     }
 
-    private Random random;
+    // class for storing the rare-event estimate of the rejection probability
+    static class RareEventResults
+    {
+        double probRejection;
+        double relativeError;       // standard error divided by the estimate
+        long cycles;                // regeneration cycles simulated
+        long steps;                 // embedded-chain transitions simulated
+        double exactProbRejection;  // M/M/1/K closed form, for checking
+        double crudeArrivalsNeeded; // arrivals plain replication needs for the same relative error
+    }
+
+    // class for storing steady-state estimates of the regenerative mode, one ratio
+    // estimator per measure; also used for the partial totals of each chunk of cycles
+    static class RegenerativeResults
+    {
+        RatioEstimator waitingTime = new RatioEstimator();   // waiting time / customers served
+        RatioEstimator systemTime = new RatioEstimator();    // time in system / customers served
+        RatioEstimator utilization = new RatioEstimator();   // busy time / cycle length
+        RatioEstimator queueLength = new RatioEstimator();   // area under number in system / cycle length
+        RatioEstimator probSystemFull = new RatioEstimator(); // time full / cycle length
+        RatioEstimator probRejection = new RatioEstimator(); // rejections / arrivals
+        // likelihood-ratio sensitivities of the waiting time
+        LikelihoodRatioEstimator waitGradientMu = new LikelihoodRatioEstimator();
+        LikelihoodRatioEstimator waitGradientLambda = new LikelihoodRatioEstimator();
+        double simulatedTime;
+
+        void merge(RegenerativeResults other)
+        {
+            waitingTime.merge(other.waitingTime);
+            systemTime.merge(other.systemTime);
+            utilization.merge(other.utilization);
+            queueLength.merge(other.queueLength);
+            probSystemFull.merge(other.probSystemFull);
+            probRejection.merge(other.probRejection);
+            waitGradientMu.merge(other.waitGradientMu);
+            waitGradientLambda.merge(other.waitGradientLambda);
+            simulatedTime += other.simulatedTime;
+        }
+    }
+
+    private RngStreams streams;
+    private Random arrivalRandom; // substreams of the current replication
+    private Random serviceRandom;
+    private Random classRandom;
     private double lambda; // arrival rate
     private double mu;    // service rate
     private int capacity;  // system capacity
+    private QueueDiscipline.Type discipline;
+    private double[] classProbabilities; // traffic mix over the priority classes
+    private CustomerRecorder recorder; // optional store of every completed customer
+    private SimulationFeed<SimulationResults> feed; // optional incremental output
+    private ReplicationMonitor monitor; // optional anytime estimates and cancellation
+    private String monitorPoint;
     // cunstructor to assign the details
     public  Q2(double lambda, double mu, int capacity) {
-        
-        this.random = new Random();
+        this(lambda, mu, capacity, QueueDiscipline.Type.FIFO, new double[] {1.0});
+    }
+
+    public Q2(double lambda, double mu, int capacity, QueueDiscipline.Type discipline, double[] classProbabilities) {
+        this(lambda, mu, capacity, discipline, classProbabilities, RngStreams.defaultStreams());
+    }
+
+    public Q2(double lambda, double mu, int capacity, QueueDiscipline.Type discipline, double[] classProbabilities,
+              RngStreams streams) {
+        this.streams = streams;
         this.lambda = lambda;
         this.mu = mu;
         this.capacity = capacity;
-        
+        this.discipline = discipline;
+        this.classProbabilities = classProbabilities;
+    }
+
+    // stores every completed customer in `recorder`
+    void setRecorder(CustomerRecorder recorder)
+    {
+        this.recorder = recorder;
+    }
+
+    // metrics of each replication, in the order published to the feed's aggregates
+    static final String[] METRICS = {
+        "Avg Wait Time", "Avg Sys Time", "Utilization", "Avg Queue Len", "P(System Full)", "P(Rejection)"
+    };
+
+    // Installs a feed publishing events (1 in `eventSampling`), every replication's results
+    // and aggregates every `aggregateEvery` replications
+    SimulationFeed<SimulationResults> openFeed(int eventSampling, int bufferSize, int aggregateEvery)
+    {
+        setFeed(SimulationFeed.create(eventSampling, bufferSize, aggregateEvery, METRICS));
+        return feed;
+    }
+
+    // publishes to a feed built elsewhere over METRICS, or to none if null
+    void setFeed(SimulationFeed<SimulationResults> feed)
+    {
+        this.feed = feed;
+    }
+
+    // Reports every replication of runMultipleSimulations to `monitor` under `point`, and
+    // stops when it cancels
+    void setMonitor(ReplicationMonitor monitor, String point)
+    {
+        this.monitor = monitor;
+        this.monitorPoint = point;
     }
+
     // generates exponential distribution
-    private double getExponential(double rate)
+    private double getExponential(Random source, double rate)
     {
-        return -Math.log(1.0 - random.nextDouble())/rate;
+        return -Math.log(1.0 - source.nextDouble())/rate;
     }
 
-    private SimulationResults runSimulation()
+    // picks the priority class of an arriving customer from the traffic mix
+    private int getPriorityClass(Random source)
     {
-        Queue<Customer> queue = new LinkedList<>();
+        if (classProbabilities.length == 1)
+        {
+            return 0;
+        }
+        double u = source.nextDouble();
+        for (int i = 0; i < classProbabilities.length - 1; i++)
+        {
+            u -= classProbabilities[i];
+            if (u < 0)
+            {
+                return i;
+            }
+        }
+        return classProbabilities.length - 1;
+    }
+
+    // replication k always draws from the same substreams, so it can be rerun on its own;
+    // null if the monitor cancels it part way
+    SimulationResults runSimulation(int replication)
+    {
+        arrivalRandom = streams.stream(replication, RngStreams.ARRIVALS);
+        serviceRandom = streams.stream(replication, RngStreams.SERVICE);
+        classRandom = streams.stream(replication, RngStreams.CLASSES);
+
+        int classes = classProbabilities.length;
+        QueueDiscipline<Customer> queue = QueueDiscipline.create(discipline, classes);
         ArrayList<Customer> completedCustomers = new ArrayList<>();
-        
+        Customer inService = null;
+        int inSystem = 0; // waiting customers plus the one in service
+
         double currentTime = 0.0;
-        double nextArrival = getExponential(lambda);
+        double nextArrival = getExponential(arrivalRandom, lambda);
         double nextDeparture = Double.MAX_VALUE;
 
         int rejectedCustomers = 0;
         int totalArrivals = 0;
+        int[] classArrivals = new int[classes];
+        int[] classRejections = new int[classes];
         double busyTime = 0.0;
         double queueLengthTimeProduct = 0.0;
         double fullSystemTime = 0.0;
         double lastEventTime = 0.0;
+        long events = 0;
 
         while (currentTime < SIMULATION_TIME)
         {
+            if (monitor != null && (++events & ReplicationMonitor.CHECK_MASK) == 0 && monitor.cancelRequested())
+            {
+                return null; // an incomplete replication would bias the estimates
+            }
             // Handle arrival
             if (nextArrival < nextDeparture)
             {
@@ -75,32 +220,57 @@ public class Q2 {
                 totalArrivals++;
 
                 // Update queue length time product
-                queueLengthTimeProduct += queue.size() * (currentTime - lastEventTime);
-                if( queue.size() == capacity)
+                queueLengthTimeProduct += inSystem * (currentTime - lastEventTime);
+                if( inSystem == capacity)
                 {
                     fullSystemTime += currentTime - lastEventTime;
                 }
 
+                int priorityClass = getPriorityClass(classRandom);
+                classArrivals[priorityClass]++;
+
                 // Create new customer
-                if (queue.size() < capacity)
+                if (inSystem < capacity)
                 {
-                    Customer customer = new Customer(currentTime);
-                    queue.add(customer);
+                    Customer customer = new Customer(currentTime, priorityClass);
+                    // service time is drawn on arrival so SPT can order by it
+                    customer.serviceTime = getExponential(serviceRandom, mu);
+                    customer.remainingService = customer.serviceTime;
+                    inSystem++;
+                    if (feed != null)
+                    {
+                        feed.event(replication, SimulationFeed.ARRIVAL, currentTime, inSystem);
+                    }
 
-                    // If this is the only customer, start service
-                    if (queue.size() == 1)
+                    // If the server is idle, start service
+                    if (inService == null)
+                    {
+                        inService = customer;
+                        nextDeparture = startService(customer, currentTime);
+                    }
+                    // Preemptive disciplines interrupt a lower class in service
+                    else if (queue.preempts(priorityClass, inService.priorityClass))
+                    {
+                        inService.remainingService = inService.departureTime - currentTime;
+                        queue.requeue(inService, inService.priorityClass, inService.remainingService);
+                        inService = customer;
+                        nextDeparture = startService(customer, currentTime);
+                    }
+                    else
                     {
-                        customer.serviceStartTime = currentTime;
-                        customer.serviceTime = getExponential(mu);
-                        customer.departureTime = currentTime + customer.serviceTime;
-                        nextDeparture = customer.departureTime;
+                        queue.add(customer, priorityClass, customer.serviceTime);
                     }
                 }
                 else
                 {
                     rejectedCustomers++;
+                    classRejections[priorityClass]++;
+                    if (feed != null)
+                    {
+                        feed.event(replication, SimulationFeed.REJECTION, currentTime, inSystem);
+                    }
                 }
-                nextArrival = currentTime + getExponential(lambda);
+                nextArrival = currentTime + getExponential(arrivalRandom, lambda);
                 lastEventTime = currentTime;
             }
             // Handle departure
@@ -109,24 +279,31 @@ public class Q2 {
                 currentTime  = nextDeparture;
 
                 // Update queue length time product
-                queueLengthTimeProduct += queue.size() * (currentTime - lastEventTime);
-                if( queue.size() == capacity)
+                queueLengthTimeProduct += inSystem * (currentTime - lastEventTime);
+                if( inSystem == capacity)
                 {
                     fullSystemTime += currentTime - lastEventTime;
                 }
 
-                Customer served = queue.poll();
+                Customer served = inService;
                 completedCustomers.add(served);
+                if (recorder != null)
+                {
+                    recorder.record(replication, 0, served.priorityClass, served.arrivalTime,
+                            served.serviceStartTime, served.serviceTime, served.departureTime);
+                }
                 busyTime += served.serviceTime;
+                inSystem--;
+                if (feed != null)
+                {
+                    feed.event(replication, SimulationFeed.DEPARTURE, currentTime, inSystem);
+                }
 
                 // If there are more customers, start serving next
-                if ( !queue.isEmpty())
+                inService = queue.poll();
+                if (inService != null)
                 {
-                    Customer nexCustomer = queue.peek();
-                    nexCustomer.serviceStartTime = currentTime;
-                    nexCustomer.serviceTime = getExponential(mu);
-                    nexCustomer.departureTime = currentTime + nexCustomer.serviceTime;
-                    nextDeparture = nexCustomer.departureTime;
+                    nextDeparture = startService(inService, currentTime);
                 }
                 else
                 {
@@ -137,13 +314,20 @@ public class Q2 {
         }
 
         // Calculate the performance measures
-        SimulationResults results = new SimulationResults();
+        SimulationResults results = new SimulationResults(classes);
         double totalWaitingTime = 0.0;
         double totalSystemTime = 0.0;
+        int[] classCompleted = new int[classes];
         for (Customer c : completedCustomers)
         {
-            totalWaitingTime += c.serviceStartTime - c.arrivalTime;
-            totalSystemTime += c.departureTime - c.arrivalTime;
+            // waiting is time in system not spent in service, which also covers preempted customers
+            double waitingTime = c.departureTime - c.arrivalTime - c.serviceTime;
+            double systemTime = c.departureTime - c.arrivalTime;
+            totalWaitingTime += waitingTime;
+            totalSystemTime += systemTime;
+            results.classWaitingTime[c.priorityClass] += waitingTime;
+            results.classSystemTime[c.priorityClass] += systemTime;
+            classCompleted[c.priorityClass]++;
         }
         results.avgWaitingTime = totalWaitingTime / completedCustomers.size();
         results.avgSystemTime = totalSystemTime / completedCustomers.size();
@@ -151,22 +335,61 @@ public class Q2 {
         results.avgQueueLength = queueLengthTimeProduct / currentTime;
         results.probSystemFull = fullSystemTime / currentTime;
         results.probRejection = (double) rejectedCustomers / totalArrivals;
+        for (int i = 0; i < classes; i++)
+        {
+            results.classWaitingTime[i] = classCompleted[i] > 0 ? results.classWaitingTime[i] / classCompleted[i] : 0.0;
+            results.classSystemTime[i] = classCompleted[i] > 0 ? results.classSystemTime[i] / classCompleted[i] : 0.0;
+            results.classProbRejection[i] = classArrivals[i] > 0 ? (double) classRejections[i] / classArrivals[i] : 0.0;
+        }
         //System.out.println(totalArrivals);
+        if (feed != null)
+        {
+            feed.replicationDone(results, results.avgWaitingTime, results.avgSystemTime, results.utilizationRate,
+                    results.avgQueueLength, results.probSystemFull, results.probRejection);
+        }
         return results;
     }
 
-    private SimulationResults runMultipleSimulations() {
-        SimulationResults avgResults = new SimulationResults();
+    // puts a customer (new or resumed) into service and returns its departure time
+    private double startService(Customer customer, double currentTime)
+    {
+        if (customer.remainingService == customer.serviceTime)
+        {
+            customer.serviceStartTime = currentTime;
+        }
+        customer.departureTime = currentTime + customer.remainingService;
+        return customer.departureTime;
+    }
+
+    // With a monitor, stops early when it cancels and averages the replications completed
+    SimulationResults runMultipleSimulations() {
+        int classes = classProbabilities.length;
+        SimulationResults avgResults = new SimulationResults(classes);
         int validSimulations = 0;
 
         for (int i = 0; i < SIMULATIONS; i++) {
-            SimulationResults results = runSimulation();
+            if (monitor != null && monitor.cancelRequested()) {
+                break;
+            }
+            SimulationResults results = runSimulation(i);
+            if (results == null) {
+                break;
+            }
+            if (monitor != null) {
+                monitor.add(monitorPoint, results.avgWaitingTime, results.avgSystemTime, results.utilizationRate,
+                        results.avgQueueLength, results.probSystemFull, results.probRejection);
+            }
             avgResults.avgWaitingTime += results.avgWaitingTime;
             avgResults.avgSystemTime += results.avgSystemTime;
             avgResults.utilizationRate += results.utilizationRate;
             avgResults.avgQueueLength += results.avgQueueLength;
             avgResults.probSystemFull += results.probSystemFull;
             avgResults.probRejection += results.probRejection;
+            for (int c = 0; c < classes; c++) {
+                avgResults.classWaitingTime[c] += results.classWaitingTime[c];
+                avgResults.classSystemTime[c] += results.classSystemTime[c];
+                avgResults.classProbRejection[c] += results.classProbRejection[c];
+            }
             validSimulations++;
         }
 
@@ -177,11 +400,364 @@ public class Q2 {
         avgResults.avgQueueLength /= validSimulations;
         avgResults.probSystemFull /= validSimulations;
         avgResults.probRejection /= validSimulations;
+        for (int c = 0; c < classes; c++) {
+            avgResults.classWaitingTime[c] /= validSimulations;
+            avgResults.classSystemTime[c] /= validSimulations;
+            avgResults.classProbRejection[c] /= validSimulations;
+        }
+        avgResults.replications = validSimulations;
 
         return avgResults;
     }
 
+    // Regenerative mode: the system regenerates whenever a customer arrives to an empty
+    // system, so one long run is a sequence of i.i.d. cycles. The horizon is cut into
+    // chunks of simulated time; each chunk runs whole cycles on its own substreams until
+    // its share of the horizon is used, and the chunks run in parallel on `threads`
+    // workers. Chunks are merged in order, so the estimates do not depend on the number
+    // of threads. Stopping at the first cycle end past the budget biases the estimates
+    // by O(1/cycles), far below their confidence intervals.
+    RegenerativeResults runRegenerative(double horizon, int chunks, int threads)
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            List<Future<RegenerativeResults>> parts = new ArrayList<>();
+            for (int chunk = 0; chunk < chunks; chunk++)
+            {
+                final int replication = chunk;
+                parts.add(executor.submit(() -> simulateCycles(replication, horizon / chunks)));
+            }
+            RegenerativeResults results = new RegenerativeResults();
+            for (Future<RegenerativeResults> part : parts)
+            {
+                results.merge(part.get());
+            }
+            return results;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Regenerative run interrupted", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException("Regenerative chunk failed", e.getCause());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    // Runs complete cycles for one chunk. Same event logic as runSimulation, but with
+    // local state and random sources so chunks can run concurrently. Every customer
+    // arriving in a cycle also leaves in it, since the cycle ends with an empty system.
+    // The scores for the waiting-time sensitivities need no work per event: a cycle draws
+    // one interarrival time per arrival, summing to its length, and one service time per
+    // customer served, summing to its busy time, so with d/dtheta log(theta e^(-theta t))
+    // = 1/theta - t the cycle's scores are arrivals/lambda - length and served/mu - busy.
+    private RegenerativeResults simulateCycles(int replication, double budget)
+    {
+        Random arrivalSource = streams.stream(replication, RngStreams.ARRIVALS);
+        Random serviceSource = streams.stream(replication, RngStreams.SERVICE);
+        Random classSource = streams.stream(replication, RngStreams.CLASSES);
+        QueueDiscipline<Customer> queue = QueueDiscipline.create(discipline, classProbabilities.length);
+        RegenerativeResults results = new RegenerativeResults();
+
+        // each cycle starts with an arrival to the empty system at currentTime
+        double currentTime = 0.0;
+        double nextArrival = 0.0;
+        while (results.simulatedTime < budget)
+        {
+            double cycleStart = currentTime;
+            double nextDeparture = Double.MAX_VALUE;
+            Customer inService = null;
+            int inSystem = 0;
+            double lastEventTime = currentTime;
+            double area = 0.0, fullTime = 0.0, busyTime = 0.0, waitSum = 0.0, systemSum = 0.0;
+            long arrivals = 0, rejections = 0, served = 0;
+
+            // until the system empties; the next arrival then starts a new cycle
+            while (arrivals == 0 || inSystem > 0)
+            {
+                if (nextArrival < nextDeparture)
+                {
+                    currentTime = nextArrival;
+                    arrivals++;
+                    area += inSystem * (currentTime - lastEventTime);
+                    if (inSystem == capacity)
+                    {
+                        fullTime += currentTime - lastEventTime;
+                    }
+
+                    int priorityClass = getPriorityClass(classSource);
+                    if (inSystem < capacity)
+                    {
+                        Customer customer = new Customer(currentTime, priorityClass);
+                        customer.serviceTime = getExponential(serviceSource, mu);
+                        customer.remainingService = customer.serviceTime;
+                        inSystem++;
+                        if (inService == null)
+                        {
+                            inService = customer;
+                            nextDeparture = startService(customer, currentTime);
+                        }
+                        else if (queue.preempts(priorityClass, inService.priorityClass))
+                        {
+                            inService.remainingService = inService.departureTime - currentTime;
+                            queue.requeue(inService, inService.priorityClass, inService.remainingService);
+                            inService = customer;
+                            nextDeparture = startService(customer, currentTime);
+                        }
+                        else
+                        {
+                            queue.add(customer, priorityClass, customer.serviceTime);
+                        }
+                    }
+                    else
+                    {
+                        rejections++;
+                    }
+                    nextArrival = currentTime + getExponential(arrivalSource, lambda);
+                }
+                else
+                {
+                    currentTime = nextDeparture;
+                    area += inSystem * (currentTime - lastEventTime);
+                    if (inSystem == capacity)
+                    {
+                        fullTime += currentTime - lastEventTime;
+                    }
+
+                    served++;
+                    busyTime += inService.serviceTime;
+                    waitSum += inService.departureTime - inService.arrivalTime - inService.serviceTime;
+                    systemSum += inService.departureTime - inService.arrivalTime;
+                    inSystem--;
+
+                    inService = queue.poll();
+                    nextDeparture = inService != null ? startService(inService, currentTime) : Double.MAX_VALUE;
+                }
+                lastEventTime = currentTime;
+            }
+
+            // the idle time up to the next arrival closes the cycle
+            double cycleLength = nextArrival - cycleStart;
+            currentTime = nextArrival;
+            results.waitingTime.add(waitSum, served);
+            results.systemTime.add(systemSum, served);
+            results.utilization.add(busyTime, cycleLength);
+            results.queueLength.add(area, cycleLength);
+            results.probSystemFull.add(fullTime, cycleLength);
+            results.probRejection.add(rejections, arrivals);
+            results.waitGradientMu.add(waitSum, served, served / mu - busyTime);
+            results.waitGradientLambda.add(waitSum, served, arrivals / lambda - cycleLength);
+            results.simulatedTime += cycleLength;
+        }
+        return results;
+    }
+
+    // Estimates P(rejection) by importance sampling over regeneration cycles.
+    // A cycle starts when a customer arrives to an empty system and ends when the
+    // system empties again. Only the embedded jump chain matters for the fraction of
+    // rejected arrivals, so each step is an arrival with probability lambda/(lambda+mu).
+    // Until the cycle reaches capacity or empties, arrivals and departures are
+    // swapped (the exponential tilt that makes overflow likely); after reaching capacity
+    // the original dynamics resume. Weighting each cycle by its likelihood ratio gives
+    // unbiased numerator and denominator for the ratio E[rejections] / E[arrivals].
+    private RareEventResults estimateRareRejection(long cycles)
+    {
+        Random random = streams.stream(0, RngStreams.ARRIVALS);
+        double pUp = lambda / (lambda + mu);
+        // the swap only helps when overflow is rare, otherwise sample the original chain
+        double pUpTilted = lambda < mu ? mu / (lambda + mu) : pUp;
+        double upRatio = pUp / pUpTilted;
+        double downRatio = (1.0 - pUp) / (1.0 - pUpTilted);
+
+        RatioEstimator estimator = new RatioEstimator();
+        long steps = 0;
+        for (long i = 0; i < cycles; i++)
+        {
+            int inSystem = 1;
+            double likelihood = 1.0;
+            long arrivals = 1;
+            long rejections = 0;
+
+            // tilted phase: run until the system is full or empty
+            while (inSystem > 0 && inSystem < capacity)
+            {
+                steps++;
+                if (random.nextDouble() < pUpTilted)
+                {
+                    inSystem++;
+                    arrivals++;
+                    likelihood *= upRatio;
+                }
+                else
+                {
+                    inSystem--;
+                    likelihood *= downRatio;
+                }
+            }
+            // original dynamics from a full system back to empty
+            while (inSystem > 0)
+            {
+                steps++;
+                if (random.nextDouble() < pUp)
+                {
+                    arrivals++;
+                    if (inSystem == capacity)
+                    {
+                        rejections++;
+                    }
+                    else
+                    {
+                        inSystem++;
+                    }
+                }
+                else
+                {
+                    inSystem--;
+                }
+            }
+
+            estimator.add(likelihood * rejections, likelihood * arrivals);
+        }
+
+        RareEventResults results = new RareEventResults();
+        double estimate = estimator.estimate();
+        double rho = lambda / mu;
+        results.probRejection = estimate;
+        results.relativeError = estimate > 0 ? estimator.standardError() / estimate : Double.NaN;
+        results.cycles = cycles;
+        results.steps = steps;
+        results.exactProbRejection = rho == 1.0
+                ? 1.0 / (capacity + 1)
+                : (1 - rho) * Math.pow(rho, capacity) / (1 - Math.pow(rho, capacity + 1));
+        results.crudeArrivalsNeeded = (1 - estimate) / (estimate * results.relativeError * results.relativeError);
+        return results;
+    }
+
+    public static void analyzeRareRejection(double lambda, double mu, int[] capacities, long cycles)
+    {
+        System.out.println("\nRare-Event Rejection Analysis (importance sampling, " + cycles + " cycles):");
+        System.out.println("--------------------------------------------------");
+        System.out.printf("%-10s %-15s %-15s %-15s %-15s %-15s%n",
+                "Capacity", "P(Rejection)", "Rel Error", "Exact", "Time (ms)", "Crude Arrivals");
+        for (int capacity : capacities)
+        {
+            Q2 simulation = new Q2(lambda, mu, capacity);
+            long start = System.nanoTime();
+            RareEventResults results = simulation.estimateRareRejection(cycles);
+            double elapsedMs = (System.nanoTime() - start) / 1e6;
+
+            System.out.printf("%-10d %-15.6e %-15.6f %-15.6e %-15.3f %-15.3e%n",
+                    capacity,
+                    results.probRejection,
+                    results.relativeError,
+                    results.exactProbRejection,
+                    elapsedMs,
+                    results.crudeArrivalsNeeded);
+        }
+    }
+
+    // One long steady-state run in regenerative mode, sequential and on all cores,
+    // next to the M/M/1/K closed form. Both are warmed up on a tenth of the horizon, then
+    // run alternately a few times, and each is timed by its best run, so neither pays for
+    // compilation.
+    public static void analyzeRegenerative(double lambda, double mu, int capacity, double horizon)
+    {
+        int chunks = 64;
+        int rounds = 3;
+        int cores = Runtime.getRuntime().availableProcessors();
+        Q2 simulation = new Q2(lambda, mu, capacity);
+
+        simulation.runRegenerative(horizon / 10, chunks, 1);
+        simulation.runRegenerative(horizon / 10, chunks, cores);
+        RegenerativeResults sequential = null;
+        RegenerativeResults results = null;
+        double sequentialSeconds = Double.POSITIVE_INFINITY;
+        double parallelSeconds = Double.POSITIVE_INFINITY;
+        for (int round = 0; round < rounds; round++)
+        {
+            long start = System.nanoTime();
+            sequential = simulation.runRegenerative(horizon, chunks, 1);
+            sequentialSeconds = Math.min(sequentialSeconds, (System.nanoTime() - start) / 1e9);
+            start = System.nanoTime();
+            results = simulation.runRegenerative(horizon, chunks, cores);
+            parallelSeconds = Math.min(parallelSeconds, (System.nanoTime() - start) / 1e9);
+        }
+
+        double[] exact = exactMeasures(lambda, mu, capacity);
+        // the closed form's own derivatives, by central differences
+        double h = 1e-5;
+        double exactGradientMu = (exactMeasures(lambda, mu * (1 + h), capacity)[0]
+                - exactMeasures(lambda, mu * (1 - h), capacity)[0]) / (2 * h * mu);
+        double exactGradientLambda = (exactMeasures(lambda * (1 + h), mu, capacity)[0]
+                - exactMeasures(lambda * (1 - h), mu, capacity)[0]) / (2 * h * lambda);
+
+        System.out.printf("%nRegenerative Steady-State Run (capacity %d, %.0f hours, %d cycles):%n",
+                capacity, results.simulatedTime, results.queueLength.cycles());
+        System.out.println("--------------------------------------------------");
+        System.out.printf("%-15s %-15s %-15s %-15s%n", "Metric", "Estimate", "95% Half-Width", "Exact");
+        String[] metrics = {"Avg Wait Time", "Avg Sys Time", "Utilization", "Avg Queue Len", "P(System Full)", "P(Rejection)"};
+        RatioEstimator[] estimators = {results.waitingTime, results.systemTime, results.utilization,
+                results.queueLength, results.probSystemFull, results.probRejection};
+        for (int m = 0; m < metrics.length; m++)
+        {
+            System.out.printf("%-15s %-15.6f %-15.6f %-15.6f%n",
+                    metrics[m], estimators[m].estimate(), estimators[m].halfWidth(), exact[m]);
+        }
+        System.out.printf("%-15s %-15.6f %-15.6f %-15.6f%n", "dW/dmu",
+                results.waitGradientMu.estimate(), results.waitGradientMu.halfWidth(), exactGradientMu);
+        System.out.printf("%-15s %-15.6f %-15.6f %-15.6f%n", "dW/dlambda",
+                results.waitGradientLambda.estimate(), results.waitGradientLambda.halfWidth(), exactGradientLambda);
+        System.out.printf("Wall time (best of %d, after warm-up): %.2f s on 1 thread, %.2f s on %d (%s)%n",
+                rounds, sequentialSeconds, parallelSeconds, cores,
+                sequential.waitingTime.estimate() == results.waitingTime.estimate() ? "identical estimates" : "estimates differ");
+    }
+
+    // M/M/1/K steady state from its stationary distribution, in the order of analyzeRegenerative
+    private static double[] exactMeasures(double lambda, double mu, int capacity)
+    {
+        double rho = lambda / mu;
+        double[] p = new double[capacity + 1];
+        double norm = 0.0;
+        for (int n = 0; n <= capacity; n++)
+        {
+            p[n] = Math.pow(rho, n);
+            norm += p[n];
+        }
+        double exactL = 0.0;
+        for (int n = 0; n <= capacity; n++)
+        {
+            p[n] /= norm;
+            exactL += n * p[n];
+        }
+        double exactSystem = exactL / (lambda * (1 - p[capacity]));
+        return new double[] {exactSystem - 1 / mu, exactSystem, 1 - p[0], exactL, p[capacity], p[capacity]};
+    }
+
     public static void analyzeCapacityEffect(double lambda, double mu, int minCapacity, int maxCapacity)
+    {
+        analyzeCapacityEffect(lambda, mu, minCapacity, maxCapacity, null);
+    }
+
+    // Sweep reporting to `monitor` (may be null) as it goes; if the monitor cancels, the capacity in
+    // progress is printed over the replications it completed and the sweep stops. The
+    // estimates so far, with confidence intervals, stay available from the monitor.
+    public static void analyzeCapacityEffect(double lambda, double mu, int minCapacity, int maxCapacity,
+                                             ReplicationMonitor monitor)
+    {
+        analyzeCapacityEffect(lambda, mu, minCapacity, maxCapacity, monitor, null);
+    }
+
+    // As above, also streaming each capacity through the feed `feeds` gives for it (may be
+    // null), already subscribed by the caller; the feed is closed when the capacity is done
+    public static void analyzeCapacityEffect(double lambda, double mu, int minCapacity, int maxCapacity,
+                                             ReplicationMonitor monitor,
+                                             IntFunction<SimulationFeed<SimulationResults>> feeds)
     {
         System.out.println("\nCapacity Analysis Results:");
         System.out.println("--------------------------------------------------");
@@ -190,7 +766,18 @@ public class Q2 {
         for (int capacity = minCapacity; capacity <= maxCapacity; capacity++)
         {
             Q2 simulation = new Q2(lambda, mu, capacity);
+            simulation.setMonitor(monitor, "capacity " + capacity);
+            SimulationFeed<SimulationResults> feed = feeds == null ? null : feeds.apply(capacity);
+            simulation.setFeed(feed);
             SimulationResults results = simulation.runMultipleSimulations();
+            if (feed != null)
+            {
+                feed.close();
+            }
+            if (results.replications == 0)
+            {
+                break;
+            }
 
             System.out.printf("%-10d %-15.6f %-15.6f %-15.6f %-15.6f %-15.6f %-15.6f%n",
                     capacity,
@@ -200,17 +787,64 @@ public class Q2 {
                     results.avgQueueLength,
                     results.probSystemFull,
                     results.probRejection);
+            if (results.replications < SIMULATIONS)
+            {
+                System.out.println("Cancelled after " + results.replications + " of " + SIMULATIONS
+                        + " replications at capacity " + capacity);
+                break;
+            }
         }
     }
 
+    // compares the scheduling disciplines at a fixed capacity, per priority class
+    public static void analyzeDisciplines(double lambda, double mu, int capacity, double[] classProbabilities)
+    {
+        System.out.println("\nDiscipline Analysis Results (capacity " + capacity + "):");
+        System.out.println("--------------------------------------------------");
+        System.out.printf("%-22s %-8s %-15s %-15s %-15s%n",
+                "Discipline", "Class", "Avg Wait Time", "Avg Sys Time", "P(Rejection)");
+        for (QueueDiscipline.Type discipline : QueueDiscipline.Type.values())
+        {
+            Q2 simulation = new Q2(lambda, mu, capacity, discipline, classProbabilities);
+            SimulationResults results = simulation.runMultipleSimulations();
 
+            System.out.printf("%-22s %-8s %-15.6f %-15.6f %-15.6f%n",
+                    discipline, "all",
+                    results.avgWaitingTime,
+                    results.avgSystemTime,
+                    results.probRejection);
+            for (int c = 0; c < classProbabilities.length; c++)
+            {
+                System.out.printf("%-22s %-8d %-15.6f %-15.6f %-15.6f%n",
+                        "", c,
+                        results.classWaitingTime[c],
+                        results.classSystemTime[c],
+                        results.classProbRejection[c]);
+            }
+        }
+    }
 
     public static void main(String[] args)
     {
         double lambda = 20.0;
         double mu = 24.0;
 
-        analyzeCapacityEffect(lambda, mu, 3, 7);
-
+        System.out.println("Seed: " + RngStreams.defaultSeed());
+        // -Dprogress=N prints the estimates every N seconds; Ctrl-C stops the sweep and
+        // prints what it has. -Dfeed=N streams each capacity's running estimates every N
+        // replications through its SimulationFeed.
+        int feedEvery = Integer.getInteger("feed", 0);
+        try (ReplicationMonitor monitor = ReplicationMonitor.fromProperties(METRICS))
+        {
+            analyzeCapacityEffect(lambda, mu, 3, 7, monitor, feedEvery <= 0 ? null
+                    : capacity -> SimulationFeed.printing("capacity " + capacity, feedEvery, System.out, METRICS));
+        }
+        // the further analyses take about a minute, so they only run with -Dextended=true
+        if (Boolean.getBoolean("extended"))
+        {
+            analyzeDisciplines(lambda, mu, 5, new double[] {0.3, 0.7});
+            analyzeRareRejection(lambda, mu, new int[] {7, 25, 50, 100}, 100000);
+            analyzeRegenerative(lambda, mu, 7, 100000.0);
+        }
     }
 }
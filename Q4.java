@@ -34,26 +34,47 @@ public class Q4 {
         int customersLost; // Added to track customers who left due to long wait
     }
 
-    private Random random;
+    private RngStreams streams;
+    private Random arrivalRandom; // substreams of the current replication
+    private Random serviceRandom;
     private double lambda; // arrival rate
     private double mu;    // service rate
+    private CustomerRecorder recorder; // optional store of every completed customer
 
     public Q4(double lambda, double mu) {
-        this.random = new Random();
+        this(lambda, mu, RngStreams.defaultStreams());
+    }
+
+    public Q4(double lambda, double mu, RngStreams streams) {
+        this.streams = streams;
         this.lambda = lambda;
         this.mu = mu;
     }
 
-    private double getExponential(double rate) {
-        return -Math.log(1.0 - random.nextDouble()) / rate;
+    void setRecorder(CustomerRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    private double getExponential(Random source, double rate) {
+        return -Math.log(1.0 - source.nextDouble()) / rate;
     }
 
-    private SimulationResults runSimulation() {
+    private void record(int replication, Customer served) {
+        if (recorder != null) {
+            recorder.record(replication, 0, 0, served.arrivalTime,
+                    served.serviceStartTime, served.serviceTime, served.departureTime);
+        }
+    }
+
+    private SimulationResults runSimulation(int replication) {
+        arrivalRandom = streams.stream(replication, RngStreams.ARRIVALS);
+        serviceRandom = streams.stream(replication, RngStreams.SERVICE);
+
         Queue<Customer> queue = new LinkedList<>();
         ArrayList<Customer> completedCustomers = new ArrayList<>();
         
         double currentTime = 0.0;
-        double nextArrival = getExponential(lambda);
+        double nextArrival = getExponential(arrivalRandom, lambda);
         double nextDeparture = Double.MAX_VALUE;
         double busyTime = 0.0;
         double queueLengthTimeProduct = 0.0;
@@ -80,7 +101,7 @@ public class Q4 {
                 if (queue.size() == 1) {
                     if (currentTime - customer.arrivalTime <= MAX_WAIT_TIME) {
                         customer.serviceStartTime = currentTime;
-                        customer.serviceTime = getExponential(mu);
+                        customer.serviceTime = getExponential(serviceRandom, mu);
                         customer.departureTime = currentTime + customer.serviceTime;
                         customer.served = true;
                         nextDeparture = customer.departureTime;
@@ -91,7 +112,7 @@ public class Q4 {
                     }
                 }
 
-                nextArrival = currentTime + getExponential(lambda);
+                nextArrival = currentTime + getExponential(arrivalRandom, lambda);
                 lastEventTime = currentTime;
             } else {
                 currentTime = nextDeparture;
@@ -106,13 +127,14 @@ public class Q4 {
                     queue.poll();
                     completedCustomers.add(served);
                     busyTime += served.serviceTime;
+                    record(replication, served);
                 }
 
                 if (!queue.isEmpty()) {
                     Customer nextCustomer = queue.peek();
                     if (currentTime - nextCustomer.arrivalTime <= MAX_WAIT_TIME) {
                         nextCustomer.serviceStartTime = currentTime;
-                        nextCustomer.serviceTime = getExponential(mu);
+                        nextCustomer.serviceTime = getExponential(serviceRandom, mu);
                         nextCustomer.departureTime = currentTime + nextCustomer.serviceTime;
                         nextCustomer.served = true;
                         nextDeparture = nextCustomer.departureTime;
@@ -142,13 +164,14 @@ public class Q4 {
                 queue.poll();
                 completedCustomers.add(served);
                 busyTime += served.serviceTime;
+                record(replication, served);
             }
 
             if (!queue.isEmpty()) {
                 Customer nextCustomer = queue.peek();
                 if (currentTime - nextCustomer.arrivalTime <= MAX_WAIT_TIME) {
                     nextCustomer.serviceStartTime = currentTime;
-                    nextCustomer.serviceTime = getExponential(mu);
+                    nextCustomer.serviceTime = getExponential(serviceRandom, mu);
                     nextCustomer.departureTime = currentTime + nextCustomer.serviceTime;
                     nextCustomer.served = true;
                     nextDeparture = nextCustomer.departureTime;
@@ -189,7 +212,7 @@ public class Q4 {
         int validSimulations = 0;
 
         for (int i = 0; i < SIMULATIONS; i++) {
-            SimulationResults results = runSimulation();
+            SimulationResults results = runSimulation(i);
             avgResults.avgWaitingTime += results.avgWaitingTime;
             avgResults.avgSystemTime += results.avgSystemTime;
             avgResults.utilizationFactor += results.utilizationFactor;
@@ -255,6 +278,7 @@ public class Q4 {
     public static void main(String[] args) {
         double lambda = 10.0; // customers per hour
         double mu = 15.0;     // customers per hour
+        System.out.println("Seed: " + RngStreams.defaultSeed());
         runSimulationAnalysis(lambda, mu);
     }
 }
\ No newline at end of file
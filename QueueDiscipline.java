@@ -0,0 +1,257 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+// Scheduling discipline for the waiting line of a single-server model (Q2, Q3).
+// The discipline only holds customers that are waiting; the customer in service
+// is kept by the model so that a preemptive discipline can push it back.
+interface QueueDiscipline<T> {
+
+    enum Type {
+        FIFO,                // first in, first out (the original behaviour)
+        LIFO,                // last in, first out
+        PRIORITY,            // non-preemptive priority, class 0 is the highest
+        PREEMPTIVE_PRIORITY, // preemptive-resume priority, class 0 is the highest
+        SPT                  // shortest processing time first
+    }
+
+    // Add an arriving customer to the waiting line
+    void add(T customer, int priorityClass, double serviceTime);
+
+    // Put back a customer that was interrupted while in service
+    void requeue(T customer, int priorityClass, double remainingService);
+
+    // Remove and return the next customer to serve, or null if none is waiting
+    T poll();
+
+    int size();
+
+    boolean isEmpty();
+
+    // Whether an arriving customer interrupts the customer currently in service
+    boolean preempts(int arrivingClass, int inServiceClass);
+
+    static <T> QueueDiscipline<T> create(Type type, int classes) {
+        switch (type) {
+            case FIFO:
+                return new Fifo<>();
+            case LIFO:
+                return new Lifo<>();
+            case PRIORITY:
+                return new PriorityClasses<>(classes, false);
+            case PREEMPTIVE_PRIORITY:
+                return new PriorityClasses<>(classes, true);
+            case SPT:
+                return new ShortestProcessingTime<>();
+            default:
+                throw new IllegalArgumentException("Unknown discipline: " + type);
+        }
+    }
+
+    // Plain FIFO on an array deque: O(1) add and poll without per-node allocation
+    class Fifo<T> implements QueueDiscipline<T> {
+        private final ArrayDeque<T> queue = new ArrayDeque<>();
+
+        public void add(T customer, int priorityClass, double serviceTime) {
+            queue.addLast(customer);
+        }
+
+        public void requeue(T customer, int priorityClass, double remainingService) {
+            queue.addFirst(customer);
+        }
+
+        public T poll() {
+            return queue.pollFirst();
+        }
+
+        public int size() {
+            return queue.size();
+        }
+
+        public boolean isEmpty() {
+            return queue.isEmpty();
+        }
+
+        public boolean preempts(int arrivingClass, int inServiceClass) {
+            return false;
+        }
+    }
+
+    class Lifo<T> implements QueueDiscipline<T> {
+        private final ArrayDeque<T> stack = new ArrayDeque<>();
+
+        public void add(T customer, int priorityClass, double serviceTime) {
+            stack.addFirst(customer);
+        }
+
+        public void requeue(T customer, int priorityClass, double remainingService) {
+            stack.addFirst(customer);
+        }
+
+        public T poll() {
+            return stack.pollFirst();
+        }
+
+        public int size() {
+            return stack.size();
+        }
+
+        public boolean isEmpty() {
+            return stack.isEmpty();
+        }
+
+        public boolean preempts(int arrivingClass, int inServiceClass) {
+            return false;
+        }
+    }
+
+    // One FIFO bucket per priority class. A bit mask of the non-empty buckets
+    // gives the highest waiting class in O(1), so at most 32 classes are supported.
+    class PriorityClasses<T> implements QueueDiscipline<T> {
+        private final ArrayDeque<T>[] buckets;
+        private final boolean preemptive;
+        private int nonEmptyMask;
+        private int size;
+
+        PriorityClasses(int classes, boolean preemptive) {
+            if (classes < 1 || classes > 32) {
+                throw new IllegalArgumentException("Priority classes must be between 1 and 32: " + classes);
+            }
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            ArrayDeque<T>[] buckets = new ArrayDeque[classes];
+            this.buckets = buckets;
+            for (int i = 0; i < classes; i++) {
+                buckets[i] = new ArrayDeque<>();
+            }
+            this.preemptive = preemptive;
+        }
+
+        public void add(T customer, int priorityClass, double serviceTime) {
+            buckets[priorityClass].addLast(customer);
+            nonEmptyMask |= 1 << priorityClass;
+            size++;
+        }
+
+        // An interrupted customer resumes before the others of its class
+        public void requeue(T customer, int priorityClass, double remainingService) {
+            buckets[priorityClass].addFirst(customer);
+            nonEmptyMask |= 1 << priorityClass;
+            size++;
+        }
+
+        public T poll() {
+            if (nonEmptyMask == 0) {
+                return null;
+            }
+            int priorityClass = Integer.numberOfTrailingZeros(nonEmptyMask);
+            T customer = buckets[priorityClass].pollFirst();
+            if (buckets[priorityClass].isEmpty()) {
+                nonEmptyMask &= ~(1 << priorityClass);
+            }
+            size--;
+            return customer;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public boolean preempts(int arrivingClass, int inServiceClass) {
+            return preemptive && arrivingClass < inServiceClass;
+        }
+    }
+
+    // Binary min-heap on the service time, kept in parallel arrays so that adding
+    // a customer does not allocate. Ties are broken by insertion order.
+    class ShortestProcessingTime<T> implements QueueDiscipline<T> {
+        private double[] keys = new double[16];
+        private long[] sequence = new long[16];
+        private Object[] items = new Object[16];
+        private long nextSequence;
+        private int size;
+
+        public void add(T customer, int priorityClass, double serviceTime) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                sequence = Arrays.copyOf(sequence, size * 2);
+                items = Arrays.copyOf(items, size * 2);
+            }
+            int i = size++;
+            // Sift up
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= serviceTime) {
+                    break;
+                }
+                move(parent, i);
+                i = parent;
+            }
+            keys[i] = serviceTime;
+            sequence[i] = nextSequence++;
+            items[i] = customer;
+        }
+
+        public void requeue(T customer, int priorityClass, double remainingService) {
+            add(customer, priorityClass, remainingService);
+        }
+
+        @SuppressWarnings("unchecked")
+        public T poll() {
+            if (size == 0) {
+                return null;
+            }
+            T top = (T) items[0];
+            size--;
+            double key = keys[size];
+            long seq = sequence[size];
+            Object item = items[size];
+            items[size] = null;
+            // Sift the last element down from the root
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                int right = child + 1;
+                if (right < size && less(right, child)) {
+                    child = right;
+                }
+                if (key < keys[child] || (key == keys[child] && seq < sequence[child])) {
+                    break;
+                }
+                move(child, i);
+                i = child;
+            }
+            if (size > 0) {
+                keys[i] = key;
+                sequence[i] = seq;
+                items[i] = item;
+            }
+            return top;
+        }
+
+        private boolean less(int a, int b) {
+            return keys[a] < keys[b] || (keys[a] == keys[b] && sequence[a] < sequence[b]);
+        }
+
+        private void move(int from, int to) {
+            keys[to] = keys[from];
+            sequence[to] = sequence[from];
+            items[to] = items[from];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public boolean preempts(int arrivingClass, int inServiceClass) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+// Regenerative ratio estimator: the steady-state value of a measure is E[Y] / E[X], where
+// Y and X are sums over one regeneration cycle (e.g. waiting time and customers served,
+// or queue-length area and cycle length). Cycles are i.i.d., so the ratio of the cycle
+// means is consistent and its confidence interval follows from the delta method:
+// Var(Y - r X) / (n E[X]^2). Moments are kept Welford-style so partial estimators from
+// separate workers can be merged without loss.
+class RatioEstimator {
+    private long n;
+    private double meanY;
+    private double meanX;
+    private double m2Y;  // sum of squared deviations of Y
+    private double m2X;
+    private double coXY; // sum of products of deviations
+
+    void add(double y, double x) {
+        n++;
+        double dy = y - meanY;
+        double dx = x - meanX;
+        meanY += dy / n;
+        meanX += dx / n;
+        m2Y += dy * (y - meanY);
+        m2X += dx * (x - meanX);
+        coXY += dy * (x - meanX);
+    }
+
+    void merge(RatioEstimator other) {
+        if (other.n == 0) {
+            return;
+        }
+        long total = n + other.n;
+        double dy = other.meanY - meanY;
+        double dx = other.meanX - meanX;
+        double weight = (double) n * other.n / total;
+        m2Y += other.m2Y + dy * dy * weight;
+        m2X += other.m2X + dx * dx * weight;
+        coXY += other.coXY + dy * dx * weight;
+        meanY += dy * other.n / total;
+        meanX += dx * other.n / total;
+        n = total;
+    }
+
+    long cycles() {
+        return n;
+    }
+
+    double estimate() {
+        return meanX != 0.0 ? meanY / meanX : Double.NaN;
+    }
+
+    double standardError() {
+        if (n < 2 || meanX == 0.0) {
+            return Double.NaN;
+        }
+        double r = estimate();
+        double variance = (m2Y - 2 * r * coXY + r * r * m2X) / (n - 1);
+        return Math.sqrt(Math.max(variance, 0.0) / n) / Math.abs(meanX);
+    }
+
+    // 95% confidence half-width
+    double halfWidth() {
+        return 1.96 * standardError();
+    }
+}
@@ -0,0 +1,128 @@
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Anytime estimates and cooperative cancellation for replication drivers. A driver adds
+// each finished replication under the label of the point it belongs to (a capacity, a
+// service rate), so the running means and 95% half-widths of every point swept so far
+// can be read from any thread: on demand with snapshot(), every few seconds with
+// reportEvery(), or once when the JVM is interrupted (Ctrl-C, SIGTERM) with
+// reportOnShutdown(), which also cancels the run and waits for the driver to stop.
+// cancel() only sets a volatile flag; event loops poll it once every CHECK_MASK + 1
+// events and drivers between replications, and a replication cut short is discarded,
+// so the estimates only ever cover complete replications.
+class ReplicationMonitor implements AutoCloseable {
+    static final int CHECK_MASK = 4095; // event loops poll the flag when (events & CHECK_MASK) == 0
+
+    private final String[] metrics;
+    private final Map<String, RunningMetrics> points = new LinkedHashMap<>(); // guarded by this
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile boolean cancelled;
+    private ScheduledExecutorService reporter;
+    private Thread shutdownHook;
+
+    ReplicationMonitor(String... metrics) {
+        this.metrics = metrics;
+    }
+
+    // Monitor configured from system properties: -Dprogress=N reports every N seconds,
+    // and an interrupted run always reports what it has
+    static ReplicationMonitor fromProperties(String... metrics) {
+        ReplicationMonitor monitor = new ReplicationMonitor(metrics);
+        long seconds = Long.getLong("progress", 0);
+        if (seconds > 0) {
+            monitor.reportEvery(seconds, System.out);
+        }
+        monitor.reportOnShutdown(System.out, 10);
+        return monitor;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean cancelRequested() {
+        return cancelled;
+    }
+
+    // Records one complete replication of the given point
+    synchronized void add(String point, double... values) {
+        points.computeIfAbsent(point, label -> new RunningMetrics(metrics)).add(values);
+    }
+
+    // Estimates of every point so far, in the order the points were first seen
+    synchronized Map<String, RunningMetrics.Snapshot> snapshot() {
+        Map<String, RunningMetrics.Snapshot> snapshot = new LinkedHashMap<>();
+        for (Map.Entry<String, RunningMetrics> point : points.entrySet()) {
+            snapshot.put(point.getKey(), point.getValue().snapshot());
+        }
+        return snapshot;
+    }
+
+    void report(PrintStream out) {
+        Map<String, RunningMetrics.Snapshot> snapshot = snapshot();
+        StringBuilder table = new StringBuilder(cancelled ? "Estimates so far (cancelled):\n" : "Estimates so far:\n");
+        table.append(String.format("%-12s %-8s", "Point", "Reps"));
+        for (String metric : metrics) {
+            table.append(String.format(" %-22s", metric));
+        }
+        table.append('\n');
+        for (Map.Entry<String, RunningMetrics.Snapshot> point : snapshot.entrySet()) {
+            RunningMetrics.Snapshot estimates = point.getValue();
+            table.append(String.format("%-12s %-8d", point.getKey(), estimates.replications));
+            for (int i = 0; i < metrics.length; i++) {
+                table.append(String.format(" %-22s",
+                        String.format("%.6f +/- %.6f", estimates.means[i], estimates.halfWidths[i])));
+            }
+            table.append('\n');
+        }
+        out.print(table); // one write, so concurrent output does not split the table
+    }
+
+    // Prints the estimates every `seconds` on a daemon thread until closed
+    void reportEvery(long seconds, PrintStream out) {
+        reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "replication-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> report(out), seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    // When the JVM is asked to exit before close(), cancels the run, gives the driver up
+    // to `graceSeconds` to finish its replication and print its partial results, and
+    // prints the estimates
+    void reportOnShutdown(PrintStream out, long graceSeconds) {
+        shutdownHook = new Thread(() -> {
+            cancel();
+            try {
+                finished.await(graceSeconds, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            report(out);
+            out.flush();
+        }, "replication-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    // The driver is done; stops reporting and releases a waiting shutdown hook
+    @Override
+    public void close() {
+        finished.countDown();
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+        if (shutdownHook != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // already shutting down: the hook is running and reports on its own
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+import java.util.Random;
+import java.util.SplittableRandom;
+
+// Reproducible random number streams built on L'Ecuyer's MRG32k3a generator.
+// Every replication gets its own stream, 2^127 steps apart, and every purpose within
+// a replication (arrivals, service, ...) its own substream, 2^76 steps apart. Any
+// replication can therefore be recomputed alone, or on another thread, with results
+// identical to a sequential run with the same global seed.
+class RngStreams {
+    // substream purposes within a replication
+    static final int ARRIVALS = 0;
+    static final int SERVICE = 1;
+    static final int CLASSES = 2;
+    static final int ROUTING = 3;
+
+    static final long M1 = 4294967087L;
+    static final long M2 = 4294944443L;
+    static final double NORM = 2.328306549295727688e-10; // 1 / (M1 + 1)
+
+    // one-step transition matrices of the two component recurrences
+    private static final long[][] A1 = {{0, 1, 0}, {0, 0, 1}, {M1 - 810728, 1403580, 0}};
+    private static final long[][] A2 = {{0, 1, 0}, {0, 0, 1}, {M2 - 1370589, 0, 527612}};
+    // jump tables: entry i advances by 2^(127+i) steps (streams) or 2^(76+i) steps (substreams)
+    private static final long[][][] A1_STREAM = jumpTable(A1, 127, M1);
+    private static final long[][][] A2_STREAM = jumpTable(A2, 127, M2);
+    private static final long[][][] A1_SUBSTREAM = jumpTable(A1, 76, M1);
+    private static final long[][][] A2_SUBSTREAM = jumpTable(A2, 76, M2);
+
+    private static final long DEFAULT_SEED = Long.getLong("seed", System.nanoTime());
+
+    private final long seed;
+    private final long[] baseState = new long[6];
+
+    RngStreams(long seed) {
+        this.seed = seed;
+        // Spread the 64-bit seed over the six components; neither half may be all zero
+        SplittableRandom mixer = new SplittableRandom(seed);
+        do {
+            for (int i = 0; i < 3; i++) {
+                baseState[i] = Math.floorMod(mixer.nextLong(), M1);
+            }
+        } while (baseState[0] == 0 && baseState[1] == 0 && baseState[2] == 0);
+        do {
+            for (int i = 3; i < 6; i++) {
+                baseState[i] = Math.floorMod(mixer.nextLong(), M2);
+            }
+        } while (baseState[3] == 0 && baseState[4] == 0 && baseState[5] == 0);
+    }
+
+    // Streams for the seed given with -Dseed=..., or a time-based seed fixed for this JVM
+    static RngStreams defaultStreams() {
+        return new RngStreams(DEFAULT_SEED);
+    }
+
+    static long defaultSeed() {
+        return DEFAULT_SEED;
+    }
+
+    long seed() {
+        return seed;
+    }
+
+    // Substream `purpose` of replication `replication`. The jump is at most 63
+    // matrix-vector products from the precomputed tables, whatever the replication.
+    // Subclasses may replay recorded numbers instead (see CrossCheck).
+    Random stream(long replication, int purpose) {
+        return new Stream(streamState(replication, purpose));
+    }
+
+    // Raw generator state (three components mod M1, then three mod M2) of a substream,
+    // for kernels that run many streams side by side
+    long[] streamState(long replication, int purpose) {
+        long[] state = baseState.clone();
+        jump(state, A1_STREAM, A2_STREAM, replication);
+        jump(state, A1_SUBSTREAM, A2_SUBSTREAM, purpose);
+        return state;
+    }
+
+    // One MRG32k3a stream. It extends Random so the models can draw from it unchanged.
+    static final class Stream extends Random {
+        private static final long serialVersionUID = 1L;
+        private final long[] s;
+
+        private Stream(long[] state) {
+            super(0L);
+            this.s = state;
+        }
+
+        @Override
+        public double nextDouble() {
+            long p1 = Math.floorMod(1403580L * s[1] - 810728L * s[0], M1);
+            s[0] = s[1];
+            s[1] = s[2];
+            s[2] = p1;
+            long p2 = Math.floorMod(527612L * s[5] - 1370589L * s[3], M2);
+            s[3] = s[4];
+            s[4] = s[5];
+            s[5] = p2;
+            // Strictly inside (0, 1), so -log(1 - u) is always finite
+            return (p1 > p2 ? p1 - p2 : p1 - p2 + M1) * NORM;
+        }
+
+        @Override
+        protected int next(int bits) {
+            return (int) (long) (nextDouble() * 4294967296.0) >>> (32 - bits);
+        }
+    }
+
+    // Advance the state `times` jumps, one table entry per set bit of `times`
+    private static void jump(long[] state, long[][][] table1, long[][][] table2, long times) {
+        if (times < 0) {
+            throw new IllegalArgumentException("Negative stream index: " + times);
+        }
+        for (int i = 0; times != 0; i++, times >>>= 1) {
+            if ((times & 1) != 0) {
+                multiply(table1[i], state, 0, M1);
+                multiply(table2[i], state, 3, M2);
+            }
+        }
+    }
+
+    // a^(2^(exponent+i)) for i = 0..62
+    private static long[][][] jumpTable(long[][] a, int exponent, long m) {
+        long[][][] table = new long[63][][];
+        long[][] power = a;
+        for (int i = 0; i < exponent; i++) {
+            power = multiply(power, power, m);
+        }
+        for (int i = 0; i < table.length; i++) {
+            table[i] = power;
+            power = multiply(power, power, m);
+        }
+        return table;
+    }
+
+    private static long[][] multiply(long[][] a, long[][] b, long m) {
+        long[][] c = new long[3][3];
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                long sum = 0;
+                for (int k = 0; k < 3; k++) {
+                    sum += multiplyMod(a[i][k], b[k][j], m);
+                }
+                c[i][j] = sum % m;
+            }
+        }
+        return c;
+    }
+
+    // state[offset..offset+2] = a * state[offset..offset+2] mod m
+    private static void multiply(long[][] a, long[] state, int offset, long m) {
+        long[] v = new long[3];
+        for (int i = 0; i < 3; i++) {
+            long sum = 0;
+            for (int k = 0; k < 3; k++) {
+                sum += multiplyMod(a[i][k], state[offset + k], m);
+            }
+            v[i] = sum % m;
+        }
+        System.arraycopy(v, 0, state, offset, 3);
+    }
+
+    // a * b mod m for a, b < 2^32; b is split so the partial products fit in a long
+    private static long multiplyMod(long a, long b, long m) {
+        long high = (a * (b >>> 16)) % m;
+        return ((high << 16) + a * (b & 0xFFFF)) % m;
+    }
+}
@@ -0,0 +1,71 @@
+// Running means and 95% confidence half-widths of a fixed set of per-replication
+// metrics, updated one replication at a time with Welford's method so estimates are
+// available at any point without keeping the replications.
+class RunningMetrics {
+    // Immutable copy of the estimates after some number of replications
+    static final class Snapshot {
+        final String[] names;
+        final long replications;
+        final double[] means;
+        final double[] halfWidths;
+
+        Snapshot(String[] names, long replications, double[] means, double[] halfWidths) {
+            this.names = names;
+            this.replications = replications;
+            this.means = means;
+            this.halfWidths = halfWidths;
+        }
+
+        double mean(String name) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) {
+                    return means[i];
+                }
+            }
+            throw new IllegalArgumentException("Unknown metric: " + name);
+        }
+    }
+
+    private final String[] names;
+    private final double[] means;
+    private final double[] m2; // sums of squared deviations
+    private long replications;
+
+    RunningMetrics(String... names) {
+        this.names = names;
+        this.means = new double[names.length];
+        this.m2 = new double[names.length];
+    }
+
+    void add(double... values) {
+        replications++;
+        for (int i = 0; i < means.length; i++) {
+            double delta = values[i] - means[i];
+            means[i] += delta / replications;
+            m2[i] += delta * (values[i] - means[i]);
+        }
+    }
+
+    long replications() {
+        return replications;
+    }
+
+    double mean(int metric) {
+        return means[metric];
+    }
+
+    double halfWidth(int metric) {
+        if (replications < 2) {
+            return Double.NaN;
+        }
+        return 1.96 * Math.sqrt(m2[metric] / (replications - 1) / replications);
+    }
+
+    Snapshot snapshot() {
+        double[] halfWidths = new double[means.length];
+        for (int i = 0; i < halfWidths.length; i++) {
+            halfWidths[i] = halfWidth(i);
+        }
+        return new Snapshot(names, replications, means.clone(), halfWidths);
+    }
+}
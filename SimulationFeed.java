@@ -0,0 +1,229 @@
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Incremental output of a model for downstream consumers: per-event records, each
+// replication's SimulationResults, and running aggregates with confidence intervals
+// every `aggregateEvery` replications. Each stream is its own publisher, so a consumer
+// subscribes only to what it needs and sets its own backpressure policy. Nothing is
+// built for a stream without subscribers. Items reach subscribers in batches; each
+// replication's are flushed when it ends.
+class SimulationFeed<R> implements AutoCloseable {
+    // event types
+    static final int ARRIVAL = 0;
+    static final int DEPARTURE = 1;
+    static final int REJECTION = 2;
+
+    // One arrival, departure or rejection and the number in system right after it
+    static final class Event {
+        final long replication;
+        final int type;
+        final double time;
+        final int inSystem;
+
+        Event(long replication, int type, double time, int inSystem) {
+            this.replication = replication;
+            this.type = type;
+            this.time = time;
+            this.inSystem = inSystem;
+        }
+    }
+
+    final SimulationPublisher<Event> events;
+    final SimulationPublisher<R> replications;
+    final SimulationPublisher<RunningMetrics.Snapshot> aggregates;
+    private final RunningMetrics running;
+    private final int aggregateEvery;
+
+    SimulationFeed(SimulationPublisher<Event> events, SimulationPublisher<R> replications,
+                   SimulationPublisher<RunningMetrics.Snapshot> aggregates, int aggregateEvery, String... metrics) {
+        this.events = events;
+        this.replications = replications;
+        this.aggregates = aggregates;
+        this.aggregateEvery = aggregateEvery;
+        this.running = new RunningMetrics(metrics);
+    }
+
+    // Events sampled 1 in `eventSampling` and dropped when a subscriber is full,
+    // replication results dropped when full, aggregates conflated to the latest
+    static <R> SimulationFeed<R> create(int eventSampling, int bufferSize, int aggregateEvery, String... metrics) {
+        return new SimulationFeed<>(
+                SimulationPublisher.sampling(eventSampling, bufferSize),
+                SimulationPublisher.dropping(bufferSize),
+                SimulationPublisher.conflating((older, newer) -> newer, 1),
+                aggregateEvery, metrics);
+    }
+
+    void event(long replication, int type, double time, int inSystem) {
+        if (events.accept()) {
+            events.publish(new Event(replication, type, time, inSystem));
+        }
+    }
+
+    // `metrics` in the order of the names given at construction
+    void replicationDone(R results, double... metrics) {
+        replications.offer(results);
+        running.add(metrics);
+        if (running.replications() % aggregateEvery == 0 && aggregates.accept()) {
+            aggregates.publish(running.snapshot());
+        }
+        events.flush();
+        replications.flush();
+        aggregates.flush();
+    }
+
+    RunningMetrics.Snapshot snapshot() {
+        return running.snapshot();
+    }
+
+    @Override
+    public void close() {
+        if (running.replications() % aggregateEvery != 0 && aggregates.accept()) {
+            aggregates.publish(running.snapshot());
+        }
+        events.close();
+        replications.close();
+        aggregates.close();
+    }
+
+    // Feed whose aggregates are printed to `out` as they come, labelled with `point`;
+    // events and replication results are left for other subscribers
+    static <R> SimulationFeed<R> printing(String point, int aggregateEvery, PrintStream out, String... metrics) {
+        SimulationFeed<R> feed = create(1, 1024, aggregateEvery, metrics);
+        feed.aggregates.subscribe(new Flow.Subscriber<RunningMetrics.Snapshot>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(RunningMetrics.Snapshot snapshot) {
+                StringBuilder line = new StringBuilder(String.format("%-12s %-8d", point, snapshot.replications));
+                for (int i = 0; i < snapshot.names.length; i++) {
+                    line.append(String.format(" %s %.6f +/- %.6f", snapshot.names[i], snapshot.means[i],
+                            snapshot.halfWidths[i]));
+                }
+                out.println(line); // one write, so concurrent output does not split the line
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        return feed;
+    }
+
+    // Subscriber that requests everything up front, spends `workNanos` per item and
+    // counts what it receives
+    static final class CountingSubscriber<T> implements Flow.Subscriber<T> {
+        final AtomicLong received = new AtomicLong();
+        final CountDownLatch completed = new CountDownLatch(1);
+        private final long workNanos;
+
+        CountingSubscriber(long workNanos) {
+            this.workNanos = workNanos;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(T item) {
+            long until = System.nanoTime() + workNanos;
+            while (System.nanoTime() < until) {
+                // simulated consumer work
+            }
+            received.incrementAndGet();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+
+    private static final String[] SCENARIOS = {
+        "No feed", "No subscribers", "All events, fast", "All events, slow", "1/100 events, slow", "Aggregates, slow"
+    };
+
+    // Runs one scenario of the benchmark below; returns ms per replication, then the items
+    // delivered, dropped and conflated on the stream the subscriber watches
+    private static double[] runScenario(int scenario, double lambda, double mu, int replications)
+            throws InterruptedException {
+        Q2 simulation = new Q2(lambda, mu, 7);
+        SimulationFeed<Q2.SimulationResults> feed = null;
+        CountingSubscriber<Object> subscriber = null;
+        if (scenario > 0) {
+            feed = simulation.openFeed(scenario == 4 ? 100 : 1, 1024, 10);
+        }
+        if (scenario >= 2) {
+            // slow consumers spend 2 us per event or 50 ms per aggregate
+            subscriber = new CountingSubscriber<>(scenario == 2 ? 0L : scenario == 5 ? 50_000_000L : 2_000L);
+            (scenario == 5 ? feed.aggregates : feed.events).subscribe(subscriber);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < replications; i++) {
+            simulation.runSimulation(i);
+        }
+        double millisPerReplication = (System.nanoTime() - start) / 1e6 / replications;
+
+        long dropped = 0;
+        long conflated = 0;
+        if (feed != null) {
+            SimulationPublisher<?> watched = scenario == 5 ? feed.aggregates : feed.events;
+            dropped = watched.dropped();
+            conflated = watched.conflated();
+            feed.close();
+        }
+        if (subscriber != null) {
+            subscriber.completed.await(30, TimeUnit.SECONDS);
+        }
+        return new double[] {millisPerReplication, subscriber != null ? subscriber.received.get() : 0, dropped, conflated};
+    }
+
+    // Cost of publishing from Q2's event loop (capacity 7, 1000 hours per replication)
+    // under different subscribers and policies, against the same replications without a feed
+    public static void main(String[] args) throws InterruptedException {
+        double lambda = 20.0;
+        double mu = 24.0;
+        int replications = 200;
+        System.out.println("Seed: " + RngStreams.defaultSeed());
+
+        // every scenario runs once untimed first, so none is charged for compilation or for
+        // recompiling the event loop when a branch first turns live
+        for (int s = 0; s < SCENARIOS.length; s++) {
+            runScenario(s, lambda, mu, replications);
+        }
+
+        System.out.println("\nPublishing Overhead (Q2, " + replications + " replications per scenario):");
+        System.out.println("--------------------------------------------------");
+        System.out.printf("%-20s %-12s %-12s %-12s %-12s %-12s%n",
+                "Scenario", "ms/rep", "Overhead", "Delivered", "Dropped", "Conflated");
+        double baseline = 0.0;
+        for (int s = 0; s < SCENARIOS.length; s++) {
+            double[] result = runScenario(s, lambda, mu, replications);
+            if (s == 0) {
+                baseline = result[0];
+            }
+            System.out.printf("%-20s %-12.3f %-12s %-12d %-12d %-12d%n", SCENARIOS[s], result[0],
+                    s == 0 ? "-" : String.format("%+.1f%%", 100 * (result[0] / baseline - 1)),
+                    (long) result[1], (long) result[2], (long) result[3]);
+        }
+        System.out.println("Overhead includes subscriber threads competing for "
+                + Runtime.getRuntime().availableProcessors() + " core(s).");
+    }
+}
@@ -0,0 +1,253 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BinaryOperator;
+
+// Flow.Publisher fed from a simulation's hot loop. publish() never blocks: each
+// subscription buffers up to `bufferSize` items and delivers them on the executor as the
+// subscriber requests them. When a subscriber falls behind and its buffer is full, the
+// new item is either merged into the newest buffered one (conflation, if a merge
+// function is given) or dropped and counted. Sampling thins the stream before any
+// buffering: only every `sampleEvery`-th item is published at all, and accept() tells
+// the producer whether to build the next item, so skipped items cost no allocation.
+// Handing a buffer to the executor costs microseconds, so a subscriber that has caught up
+// is only woken once a quarter of its buffer has filled, or at flush() or close(); the
+// producer flushes at the end of each replication.
+class SimulationPublisher<T> implements Flow.Publisher<T>, AutoCloseable {
+    private final Executor executor;
+    private final int bufferSize;
+    private final int sampleEvery;
+    private final int batchSize; // items buffered before an idle subscriber is woken
+    private final BinaryOperator<T> conflate; // null drops items instead
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private volatile Subscription[] subscriptions = new SimulationPublisher.Subscription[0];
+    private long offered; // hot-loop thread only
+    private volatile boolean closed;
+
+    SimulationPublisher(Executor executor, int bufferSize, int sampleEvery, BinaryOperator<T> conflate) {
+        if (bufferSize <= 0 || sampleEvery <= 0) {
+            throw new IllegalArgumentException("Buffer size and sampling interval must be positive");
+        }
+        this.executor = executor;
+        this.bufferSize = bufferSize;
+        this.sampleEvery = sampleEvery;
+        this.batchSize = Math.max(1, bufferSize / 4);
+        this.conflate = conflate;
+    }
+
+    // Every item, dropping what a full subscriber cannot take
+    static <T> SimulationPublisher<T> dropping(int bufferSize) {
+        return new SimulationPublisher<>(ForkJoinPool.commonPool(), bufferSize, 1, null);
+    }
+
+    // Every `every`-th item, dropping what a full subscriber cannot take
+    static <T> SimulationPublisher<T> sampling(int every, int bufferSize) {
+        return new SimulationPublisher<>(ForkJoinPool.commonPool(), bufferSize, every, null);
+    }
+
+    // Every item, merged into the newest buffered one when a subscriber is full
+    static <T> SimulationPublisher<T> conflating(BinaryOperator<T> merge, int bufferSize) {
+        return new SimulationPublisher<>(ForkJoinPool.commonPool(), bufferSize, 1, merge);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Subscription subscription = new Subscription(subscriber);
+        synchronized (this) {
+            Subscription[] current = subscriptions;
+            Subscription[] added = Arrays.copyOf(current, current.length + 1);
+            added[current.length] = subscription;
+            subscriptions = added;
+        }
+        subscriber.onSubscribe(subscription);
+        if (closed) {
+            subscription.complete();
+        }
+    }
+
+    private synchronized void remove(Subscription subscription) {
+        Subscription[] current = subscriptions;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == subscription) {
+                Subscription[] removed = Arrays.copyOf(current, current.length - 1);
+                System.arraycopy(current, i + 1, removed, i, current.length - i - 1);
+                subscriptions = removed;
+                return;
+            }
+        }
+    }
+
+    boolean hasSubscribers() {
+        return subscriptions.length > 0;
+    }
+
+    // Whether the next item would be published; the producer only builds it if so
+    boolean accept() {
+        return subscriptions.length > 0 && offered++ % sampleEvery == 0;
+    }
+
+    // Hands an accepted item to every subscription without blocking
+    void publish(T item) {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(item);
+        }
+    }
+
+    // Shortcut for producers whose items are cheap or already built
+    void offer(T item) {
+        if (accept()) {
+            publish(item);
+        }
+    }
+
+    // Wakes every subscriber with items waiting, however few
+    void flush() {
+        for (Subscription subscription : subscriptions) {
+            subscription.flush();
+        }
+    }
+
+    long dropped() {
+        long dropped = 0;
+        for (Subscription subscription : subscriptions) {
+            dropped += subscription.dropped();
+        }
+        return dropped;
+    }
+
+    long conflated() {
+        long conflated = 0;
+        for (Subscription subscription : subscriptions) {
+            conflated += subscription.conflated();
+        }
+        return conflated;
+    }
+
+    // Subscribers get the items still buffered, then onComplete
+    @Override
+    public void close() {
+        closed = true;
+        for (Subscription subscription : subscriptions) {
+            subscription.complete();
+        }
+    }
+
+    private final class Subscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final ArrayDeque<T> buffer = new ArrayDeque<>();
+        // guarded by this
+        private long demand;
+        private boolean draining;
+        private boolean completing;
+        private boolean done;
+        private long dropped;
+        private long conflated;
+
+        Subscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        synchronized void offer(T item) {
+            if (done || completing) {
+                return;
+            }
+            if (buffer.size() < bufferSize) {
+                buffer.addLast(item);
+            } else if (conflate != null) {
+                buffer.addLast(conflate.apply(buffer.pollLast(), item));
+                conflated++;
+            } else {
+                dropped++;
+            }
+            if (buffer.size() >= batchSize) {
+                schedule();
+            }
+        }
+
+        synchronized void flush() {
+            schedule();
+        }
+
+        synchronized long dropped() {
+            return dropped;
+        }
+
+        synchronized long conflated() {
+            return conflated;
+        }
+
+        synchronized void complete() {
+            completing = true;
+            schedule();
+        }
+
+        // called holding the lock
+        private void schedule() {
+            if (!draining && !done && ((demand > 0 && !buffer.isEmpty()) || (completing && buffer.isEmpty()))) {
+                draining = true;
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Non-positive request: " + n));
+                return;
+            }
+            synchronized (this) {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                schedule();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                done = true;
+                buffer.clear();
+            }
+            remove(this);
+        }
+
+        // Delivers buffered items while there is demand, on the executor
+        @Override
+        public void run() {
+            while (true) {
+                T item;
+                synchronized (this) {
+                    if (done) {
+                        draining = false;
+                        return;
+                    }
+                    if (buffer.isEmpty() && completing) {
+                        done = true;
+                        draining = false;
+                        item = null;
+                    } else if (demand == 0 || buffer.isEmpty()) {
+                        draining = false;
+                        return;
+                    } else {
+                        item = buffer.pollFirst();
+                        demand--;
+                    }
+                }
+                try {
+                    if (item == null) {
+                        remove(this);
+                        subscriber.onComplete();
+                        return;
+                    }
+                    subscriber.onNext(item);
+                } catch (RuntimeException e) {
+                    // a failing subscriber is cancelled, as the Flow rules require
+                    cancel();
+                    return;
+                }
+            }
+        }
+    }
+}
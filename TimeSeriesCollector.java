@@ -0,0 +1,269 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+// Fixed-resolution time series of a simulation's state, aggregated across replications.
+// Each replication fills one row of time-weighted averages per bucket, which is folded
+// into running sums at the end of the replication, so memory depends on the number of
+// buckets only, never on the number of events or replications. Waiting times go into a
+// per-bucket histogram (bucketed by arrival time) from which percentiles are read.
+// Customers still waiting when a replication ends are kept as censored at the wait so
+// far, and percentiles are Kaplan-Meier estimates over the bins, so buckets near the
+// horizon are not biased toward the short waits of those who got served. Each bucket also
+// sums the hours its customers spent waiting and in the system up to the horizon, which
+// is what a transient solution of the same day can be checked against.
+class TimeSeriesCollector {
+    // waiting-time histogram: bin 0 holds zero waits, the rest are log-spaced
+    private static final int WAIT_BINS = 64;
+    private static final double MIN_WAIT = 1e-4;  // hours, upper edge of bin 1
+    private static final double MAX_WAIT = 10.0;  // hours, everything above lands in the last bin
+    private static final double BINS_PER_DECADE = (WAIT_BINS - 2) / Math.log10(MAX_WAIT / MIN_WAIT);
+
+    private final double horizon;
+    private final double resolution;
+    private final int buckets;
+
+    // current replication
+    private final double[] queueArea;
+    private final double[] busyArea;
+    private final double[] waitArea;   // hours waited before the horizon, by arrival bucket
+    private final double[] systemArea; // likewise for hours in the system
+
+    // across replications
+    private final double[] queueSum;
+    private final double[] queueSumSquares;
+    private final double[] busySum;
+    private final double[] busySumSquares;
+    private final double[] waitHoursSum;
+    private final double[] systemHoursSum;
+    private final int[] waitHistogram; // buckets * WAIT_BINS
+    private final int[] censoredHistogram; // waits known only to exceed the bin, same layout
+    private int replications;
+
+    TimeSeriesCollector(double horizon, double resolution) {
+        this.horizon = horizon;
+        this.resolution = resolution;
+        this.buckets = (int) Math.ceil(horizon / resolution - 1e-9);
+        this.queueArea = new double[buckets];
+        this.busyArea = new double[buckets];
+        this.waitArea = new double[buckets];
+        this.systemArea = new double[buckets];
+        this.queueSum = new double[buckets];
+        this.queueSumSquares = new double[buckets];
+        this.busySum = new double[buckets];
+        this.busySumSquares = new double[buckets];
+        this.waitHoursSum = new double[buckets];
+        this.systemHoursSum = new double[buckets];
+        this.waitHistogram = new int[buckets * WAIT_BINS];
+        this.censoredHistogram = new int[buckets * WAIT_BINS];
+    }
+
+    // State held constant over [from, to); spread over the buckets it covers
+    void addInterval(double from, double to, int queueLength, int busyServers) {
+        to = Math.min(to, horizon);
+        if (to <= from) {
+            return;
+        }
+        int bucket = (int) (from / resolution);
+        while (from < to && bucket < buckets) {
+            double bucketEnd = Math.min((bucket + 1) * resolution, to);
+            double time = bucketEnd - from;
+            queueArea[bucket] += queueLength * time;
+            busyArea[bucket] += busyServers * time;
+            from = bucketEnd;
+            bucket++;
+        }
+    }
+
+    // A customer who started service at `serviceStartTime` and leaves (or is due to leave)
+    // at `departureTime`
+    void addCustomer(double arrivalTime, double serviceStartTime, double departureTime) {
+        if (arrivalTime >= horizon) {
+            return;
+        }
+        int bucket = Math.min((int) (arrivalTime / resolution), buckets - 1);
+        waitHistogram[bucket * WAIT_BINS + waitBin(serviceStartTime - arrivalTime)]++;
+        waitArea[bucket] += Math.min(serviceStartTime, horizon) - arrivalTime;
+        systemArea[bucket] += Math.min(departureTime, horizon) - arrivalTime;
+    }
+
+    // A customer still waiting when the replication ends at `endTime`
+    void addWaiting(double arrivalTime, double endTime) {
+        if (arrivalTime >= horizon) {
+            return;
+        }
+        int bucket = Math.min((int) (arrivalTime / resolution), buckets - 1);
+        censoredHistogram[bucket * WAIT_BINS + waitBin(endTime - arrivalTime)]++;
+        waitArea[bucket] += Math.min(endTime, horizon) - arrivalTime;
+        systemArea[bucket] += Math.min(endTime, horizon) - arrivalTime;
+    }
+
+    void endReplication() {
+        for (int b = 0; b < buckets; b++) {
+            double bucketLength = Math.min(resolution, horizon - b * resolution);
+            double queue = queueArea[b] / bucketLength;
+            double busy = busyArea[b] / bucketLength;
+            queueSum[b] += queue;
+            queueSumSquares[b] += queue * queue;
+            busySum[b] += busy;
+            busySumSquares[b] += busy * busy;
+            waitHoursSum[b] += waitArea[b];
+            systemHoursSum[b] += systemArea[b];
+            queueArea[b] = 0.0;
+            busyArea[b] = 0.0;
+            waitArea[b] = 0.0;
+            systemArea[b] = 0.0;
+        }
+        replications++;
+    }
+
+    private static int waitBin(double waitingTime) {
+        if (waitingTime <= 0.0) {
+            return 0;
+        }
+        if (waitingTime <= MIN_WAIT) {
+            return 1;
+        }
+        int bin = 2 + (int) (Math.log10(waitingTime / MIN_WAIT) * BINS_PER_DECADE);
+        return Math.min(bin, WAIT_BINS - 1);
+    }
+
+    // upper edge of a histogram bin in hours
+    private static double binUpperEdge(int bin) {
+        if (bin == 0) {
+            return 0.0;
+        }
+        return MIN_WAIT * Math.pow(10.0, (bin - 1) / BINS_PER_DECADE);
+    }
+
+    int buckets() {
+        return buckets;
+    }
+
+    double bucketStart(int bucket) {
+        return bucket * resolution;
+    }
+
+    double meanQueueLength(int bucket) {
+        return queueSum[bucket] / replications;
+    }
+
+    double meanBusyServers(int bucket) {
+        return busySum[bucket] / replications;
+    }
+
+    // Hours waited before the horizon by the customers arriving in the bucket, per replication
+    double meanWaitHours(int bucket) {
+        return waitHoursSum[bucket] / replications;
+    }
+
+    // Likewise for the hours they spent in the system
+    double meanSystemHours(int bucket) {
+        return systemHoursSum[bucket] / replications;
+    }
+
+    // 95% confidence half-width of a bucket mean across replications
+    private double halfWidth(double sum, double sumSquares) {
+        if (replications < 2) {
+            return Double.NaN;
+        }
+        double mean = sum / replications;
+        double variance = Math.max(0.0, (sumSquares - replications * mean * mean) / (replications - 1));
+        return 1.96 * Math.sqrt(variance / replications);
+    }
+
+    int waitCount(int bucket) {
+        int count = 0;
+        for (int i = 0; i < WAIT_BINS; i++) {
+            count += waitHistogram[bucket * WAIT_BINS + i];
+        }
+        return count;
+    }
+
+    int censoredCount(int bucket) {
+        int count = 0;
+        for (int i = 0; i < WAIT_BINS; i++) {
+            count += censoredHistogram[bucket * WAIT_BINS + i];
+        }
+        return count;
+    }
+
+    // Waiting-time percentile of customers arriving in the bucket, to histogram resolution.
+    // Kaplan-Meier over the bins: a censored wait counts as at risk up to its own bin and,
+    // as usual for ties, outlives the waits that end in that bin. Without censoring this is
+    // the plain histogram percentile. NaN when the censored customers leave too few at
+    // risk for the distribution to reach p.
+    double waitPercentile(int bucket, double p) {
+        long atRisk = waitCount(bucket) + censoredCount(bucket);
+        if (atRisk == 0) {
+            return Double.NaN;
+        }
+        double survival = 1.0;
+        for (int i = 0; i < WAIT_BINS && atRisk > 0; i++) {
+            int ended = waitHistogram[bucket * WAIT_BINS + i];
+            survival *= 1.0 - (double) ended / atRisk;
+            if (1.0 - survival >= p - 1e-12) {
+                return binUpperEdge(i);
+            }
+            atRisk -= ended + censoredHistogram[bucket * WAIT_BINS + i];
+        }
+        return Double.NaN;
+    }
+
+    private static final String[] COLUMNS = {
+        "time", "mean_queue", "queue_ci", "mean_busy", "busy_ci", "waits", "censored", "wait_p50", "wait_p90",
+        "wait_p99"
+    };
+
+    private double column(int column, int bucket) {
+        switch (column) {
+            case 0: return bucketStart(bucket);
+            case 1: return meanQueueLength(bucket);
+            case 2: return halfWidth(queueSum[bucket], queueSumSquares[bucket]);
+            case 3: return meanBusyServers(bucket);
+            case 4: return halfWidth(busySum[bucket], busySumSquares[bucket]);
+            case 5: return waitCount(bucket);
+            case 6: return censoredCount(bucket);
+            case 7: return waitPercentile(bucket, 0.50);
+            case 8: return waitPercentile(bucket, 0.90);
+            case 9: return waitPercentile(bucket, 0.99);
+            default: throw new IllegalArgumentException("Unknown column: " + column);
+        }
+    }
+
+    void writeCsv(String path) throws IOException {
+        try (PrintWriter out = new PrintWriter(path)) {
+            out.println(String.join(",", COLUMNS));
+            for (int b = 0; b < buckets; b++) {
+                StringBuilder line = new StringBuilder();
+                for (int c = 0; c < COLUMNS.length; c++) {
+                    if (c > 0) {
+                        line.append(',');
+                    }
+                    line.append(column(c, b));
+                }
+                out.println(line);
+            }
+        }
+    }
+
+    // Columnar binary file: "QTS1", row count, column count, column names, then each
+    // column as a contiguous run of big-endian floats
+    void writeColumns(String path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeBytes("QTS1");
+            out.writeInt(buckets);
+            out.writeInt(COLUMNS.length);
+            for (String name : COLUMNS) {
+                out.writeUTF(name);
+            }
+            for (int c = 0; c < COLUMNS.length; c++) {
+                for (int b = 0; b < buckets; b++) {
+                    out.writeFloat((float) column(c, b));
+                }
+            }
+        }
+    }
+}
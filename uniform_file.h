@@ -0,0 +1,98 @@
+// Recorded uniform inputs written by CrossCheck.java, so the C++ and Java models can be
+// run on identical random numbers and their results compared replication by replication.
+// Layout (little-endian): "QUF1", int replications, int streams per replication,
+// int values per stream, then the values as doubles, replication-major.
+#ifndef UNIFORM_FILE_H
+#define UNIFORM_FILE_H
+
+#include <chrono>
+#include <cstdint>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <fstream>
+#include <iostream>
+#include <string>
+#include <vector>
+
+// stream purposes, as in RngStreams.java
+const int ARRIVAL_STREAM = 0;
+const int SERVICE_STREAM = 1;
+
+// Hands out the recorded values of one stream in order
+struct UniformStream {
+    const double* next;
+    const double* end;
+    long used;
+
+    UniformStream(const double* begin, const double* finish) : next(begin), end(finish), used(0) {}
+
+    double nextDouble() {
+        if (next == end) {
+            std::cerr << "Recorded uniforms exhausted" << std::endl;
+            std::exit(2);
+        }
+        used++;
+        return *next++;
+    }
+};
+
+struct UniformFile {
+    int32_t replications;
+    int32_t streams;
+    int32_t perStream;
+    std::vector<double> values;
+
+    bool load(const char* path) {
+        std::ifstream in(path, std::ios::binary);
+        char magic[4];
+        if (!in.read(magic, 4) || std::memcmp(magic, "QUF1", 4) != 0) {
+            return false;
+        }
+        in.read(reinterpret_cast<char*>(&replications), 4);
+        in.read(reinterpret_cast<char*>(&streams), 4);
+        in.read(reinterpret_cast<char*>(&perStream), 4);
+        values.resize(static_cast<size_t>(replications) * streams * perStream);
+        in.read(reinterpret_cast<char*>(values.data()), values.size() * sizeof(double));
+        return static_cast<bool>(in);
+    }
+
+    UniformStream stream(int replication, int purpose) const {
+        const double* begin = values.data() + (static_cast<size_t>(replication) * streams + purpose) * perStream;
+        return UniformStream(begin, begin + perStream);
+    }
+};
+
+// Peak resident set size in kB, or -1 where /proc is not available
+inline long peakRssKb() {
+    std::ifstream status("/proc/self/status");
+    std::string line;
+    while (std::getline(status, line)) {
+        if (line.compare(0, 6, "VmHWM:") == 0) {
+            return std::atol(line.c_str() + 6);
+        }
+    }
+    return -1;
+}
+
+// Wall-clock time in microseconds since the epoch, to measure process startup
+inline long long epochMicros() {
+    return std::chrono::duration_cast<std::chrono::microseconds>(
+        std::chrono::system_clock::now().time_since_epoch()).count();
+}
+
+inline long long elapsedNanos(std::chrono::steady_clock::time_point since) {
+    return std::chrono::duration_cast<std::chrono::nanoseconds>(std::chrono::steady_clock::now() - since).count();
+}
+
+// One replication's line: draws from each stream, then the metrics at full precision
+inline void printReplication(int replication, long arrivalDraws, long serviceDraws,
+                             const std::vector<double>& metrics) {
+    std::printf("rep %d %ld %ld", replication, arrivalDraws, serviceDraws);
+    for (double value : metrics) {
+        std::printf(" %.17g", value);
+    }
+    std::printf("\n");
+}
+
+#endif
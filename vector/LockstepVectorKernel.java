@@ -0,0 +1,233 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// LockstepReplications' kernels on jdk.incubator.vector, one vector of lanes at a time.
+// Blocks are padded to whole vectors; the padding lanes run the next replications'
+// streams and are dropped. MRG32k3a is the same double arithmetic as
+// LockstepReplications.LaneStreams, with floor done by rounding through 1.5 * 2^52
+// (exact for the magnitudes involved), so the uniforms are bit for bit the same; the
+// vector log may differ from Math.log in the last place. Q2's admission test becomes a
+// mask and the ring of departures is gathered by lane. Index arithmetic, the ring
+// updates and Q3's scan for the customers still in the system stay scalar: on JDK 17,
+// masked scatters, double-to-int conversions and casts of masks between species are not
+// intrinsic and allocate on every call.
+class LockstepVectorKernel implements LockstepReplications.Kernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final double ROUND = 6755399441055744.0; // 1.5 * 2^52
+
+    @Override
+    public String name() {
+        return "vector, " + SPECIES.length() + " doubles";
+    }
+
+    // One uniform per lane into u[0..width). Vectors never leave this method, so C2 keeps
+    // them in registers: a helper taking or returning one is not inlined here (the vector
+    // calls are deep) and boxes it, which is why floor is written out. floor(x) for
+    // |x| < 2^51 is x + ROUND - ROUND, which rounds to the nearest integer, less one where
+    // that rounded up.
+    private static void next(LockstepReplications.LaneStreams s, double[] u, int width) {
+        final double m1 = RngStreams.M1;
+        final double m2 = RngStreams.M2;
+        final double inverseM1 = 1.0 / m1;
+        final double inverseM2 = 1.0 / m2;
+        for (int r = 0; r < width; r += SPECIES.length()) {
+            DoubleVector s10 = DoubleVector.fromArray(SPECIES, s.s10, r);
+            DoubleVector s11 = DoubleVector.fromArray(SPECIES, s.s11, r);
+            DoubleVector s12 = DoubleVector.fromArray(SPECIES, s.s12, r);
+            DoubleVector p1 = s11.mul(1403580.0).sub(s10.mul(810728.0));
+            for (int i = 0; i < 2; i++) {
+                DoubleVector x = p1.mul(inverseM1);
+                DoubleVector rounded = x.add(ROUND).sub(ROUND);
+                p1 = p1.sub(rounded.lanewise(VectorOperators.SUB, 1.0, rounded.compare(VectorOperators.GT, x)).mul(m1));
+            }
+            s11.intoArray(s.s10, r);
+            s12.intoArray(s.s11, r);
+            p1.intoArray(s.s12, r);
+
+            DoubleVector s20 = DoubleVector.fromArray(SPECIES, s.s20, r);
+            DoubleVector s21 = DoubleVector.fromArray(SPECIES, s.s21, r);
+            DoubleVector s22 = DoubleVector.fromArray(SPECIES, s.s22, r);
+            DoubleVector p2 = s22.mul(527612.0).sub(s20.mul(1370589.0));
+            for (int i = 0; i < 2; i++) {
+                DoubleVector x = p2.mul(inverseM2);
+                DoubleVector rounded = x.add(ROUND).sub(ROUND);
+                p2 = p2.sub(rounded.lanewise(VectorOperators.SUB, 1.0, rounded.compare(VectorOperators.GT, x)).mul(m2));
+            }
+            s21.intoArray(s.s20, r);
+            s22.intoArray(s.s21, r);
+            p2.intoArray(s.s22, r);
+
+            // p1 - p2 if positive, otherwise p1 - p2 + m1
+            DoubleVector d = p1.sub(p2);
+            DoubleVector x = d.sub(0.5).mul(inverseM1);
+            DoubleVector rounded = x.add(ROUND).sub(ROUND);
+            d = d.sub(rounded.lanewise(VectorOperators.SUB, 1.0, rounded.compare(VectorOperators.GT, x)).mul(m1));
+            d.mul(RngStreams.NORM).intoArray(u, r);
+        }
+    }
+
+    // Exponential with the given rate from uniforms, as -log(1 - u) / rate
+    private static DoubleVector exponential(DoubleVector u, double rate) {
+        return DoubleVector.broadcast(SPECIES, 1.0).sub(u).lanewise(VectorOperators.LOG).neg().div(rate);
+    }
+
+    // Ring indices head * width + lane of lanes [r, r + SPECIES.length()) into `slots`
+    private static void slots(int[] head, int width, int r, int[] slots) {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = head[r + i] * width + r + i;
+        }
+    }
+
+    private static int padded(int lanes) {
+        return (lanes + SPECIES.length() - 1) / SPECIES.length() * SPECIES.length();
+    }
+
+    @Override
+    public void runQ3Block(double lambda, double mu, int arrivals, RngStreams streams, long firstReplication,
+                           int lanes, LockstepReplications.Q3Batch batch, int offset) {
+        int width = padded(lanes);
+        LockstepReplications.LaneStreams arrivalStreams =
+                new LockstepReplications.LaneStreams(streams, firstReplication, width, RngStreams.ARRIVALS);
+        LockstepReplications.LaneStreams serviceStreams =
+                new LockstepReplications.LaneStreams(streams, firstReplication, width, RngStreams.SERVICE);
+        double[] uniforms = new double[width];
+        double[] services = new double[width];
+        double[] arrival = new double[width];
+        double[] departure = new double[width];
+        double[] totalWait = new double[width];
+        double[] busy = new double[width];
+        // departure history, one contiguous row per customer
+        double[] history = new double[arrivals * width];
+        int[] oldest = new int[lanes];
+        int[] maxInSystem = new int[lanes];
+
+        for (int n = 0; n < arrivals; n++) {
+            next(arrivalStreams, uniforms, width);
+            next(serviceStreams, services, width);
+            for (int r = 0; r < width; r += SPECIES.length()) {
+                DoubleVector a = DoubleVector.fromArray(SPECIES, arrival, r)
+                        .add(exponential(DoubleVector.fromArray(SPECIES, uniforms, r), lambda));
+                DoubleVector service = exponential(DoubleVector.fromArray(SPECIES, services, r), mu);
+                DoubleVector start = a.max(DoubleVector.fromArray(SPECIES, departure, r));
+                DoubleVector end = start.add(service);
+                a.intoArray(arrival, r);
+                end.intoArray(departure, r);
+                end.intoArray(history, n * width + r);
+                DoubleVector.fromArray(SPECIES, totalWait, r).add(start.sub(a)).intoArray(totalWait, r);
+                DoubleVector.fromArray(SPECIES, busy, r).add(service).intoArray(busy, r);
+            }
+            // FIFO departures are increasing, so the customers still present are a suffix
+            for (int r = 0; r < lanes; r++) {
+                int h = oldest[r];
+                while (history[h * width + r] <= arrival[r]) {
+                    h++;
+                }
+                oldest[r] = h;
+                maxInSystem[r] = Math.max(maxInSystem[r], n - h + 1);
+            }
+        }
+
+        for (int r = 0; r < lanes; r++) {
+            // the run ends when the last customer leaves
+            double totalTime = departure[r];
+            double totalSystem = totalWait[r] + busy[r];
+            int i = offset + r;
+            batch.avgWaitingTime[i] = totalWait[r] / arrivals;
+            batch.avgSystemTime[i] = totalSystem / arrivals;
+            batch.utilizationFactor[i] = busy[r] / totalTime;
+            batch.avgQueueLength[i] = totalSystem / totalTime;
+            batch.maxQueueLength[i] = maxInSystem[r];
+            batch.emptyQueueProbability[i] = (totalTime - busy[r]) / totalTime;
+        }
+    }
+
+    @Override
+    public void runQ2Block(double lambda, double mu, int capacity, double horizon, RngStreams streams,
+                           long firstReplication, int lanes, LockstepReplications.Q2Batch batch, int offset) {
+        int width = padded(lanes);
+        LockstepReplications.LaneStreams arrivalStreams =
+                new LockstepReplications.LaneStreams(streams, firstReplication, width, RngStreams.ARRIVALS);
+        LockstepReplications.LaneStreams serviceStreams =
+                new LockstepReplications.LaneStreams(streams, firstReplication, width, RngStreams.SERVICE);
+        double[] uniforms = new double[width];
+        double[] services = new double[width];
+        double[] arrival = new double[width];
+        double[] departure = new double[width];
+        double[] totalWait = new double[width];
+        double[] totalSystem = new double[width];
+        double[] busy = new double[width];
+        double[] fullTime = new double[width];
+        double[] arrivals = new double[width];   // counts, exact in doubles
+        double[] rejections = new double[width];
+        // departures of the last `capacity` admitted customers; a zero means "already gone"
+        double[] ring = new double[capacity * width];
+        int[] head = new int[width];
+        int[] slots = new int[SPECIES.length()];
+        double[] ends = new double[SPECIES.length()];
+        int active = width;
+
+        while (active > 0) {
+            next(arrivalStreams, uniforms, width);
+            next(serviceStreams, services, width);
+            active = 0;
+            for (int r = 0; r < width; r += SPECIES.length()) {
+                DoubleVector a = DoubleVector.fromArray(SPECIES, arrival, r)
+                        .add(exponential(DoubleVector.fromArray(SPECIES, uniforms, r), lambda));
+                a.intoArray(arrival, r);
+                DoubleVector service = exponential(DoubleVector.fromArray(SPECIES, services, r), mu);
+                VectorMask<Double> open = a.compare(VectorOperators.LT, horizon);
+                if (!open.anyTrue()) {
+                    continue;
+                }
+                active += open.trueCount();
+                DoubleVector.fromArray(SPECIES, arrivals, r).add(1.0, open).intoArray(arrivals, r);
+
+                slots(head, width, r, slots);
+                DoubleVector oldestEnd = DoubleVector.fromArray(SPECIES, ring, 0, slots, 0);
+                VectorMask<Double> admit = open.and(oldestEnd.compare(VectorOperators.LE, a));
+                DoubleVector.fromArray(SPECIES, rejections, r).add(1.0, open.andNot(admit))
+                        .intoArray(rejections, r);
+                if (!admit.anyTrue()) {
+                    continue;
+                }
+
+                DoubleVector start = a.max(DoubleVector.fromArray(SPECIES, departure, r));
+                DoubleVector end = start.add(service);
+                DoubleVector.fromArray(SPECIES, departure, r).blend(end, admit).intoArray(departure, r);
+                DoubleVector.fromArray(SPECIES, totalWait, r).add(start.sub(a), admit).intoArray(totalWait, r);
+                DoubleVector.fromArray(SPECIES, totalSystem, r).add(end.sub(a), admit).intoArray(totalSystem, r);
+                // time averages only count what happens inside the horizon
+                DoubleVector.fromArray(SPECIES, busy, r).add(end.min(horizon).sub(start).max(0.0), admit)
+                        .intoArray(busy, r);
+                end.intoArray(ends, 0);
+
+                long admitted = admit.toLong();
+                for (int i = 0; i < slots.length; i++) {
+                    if ((admitted >> i & 1) != 0) {
+                        ring[slots[i]] = ends[i];
+                        head[r + i] = head[r + i] + 1 == capacity ? 0 : head[r + i] + 1;
+                    }
+                }
+                // full until the oldest remaining customer leaves
+                slots(head, width, r, slots);
+                DoubleVector nextOldest = DoubleVector.fromArray(SPECIES, ring, 0, slots, 0);
+                VectorMask<Double> full = admit.and(nextOldest.compare(VectorOperators.GT, a));
+                DoubleVector.fromArray(SPECIES, fullTime, r).add(nextOldest.min(horizon).sub(a), full)
+                        .intoArray(fullTime, r);
+            }
+        }
+
+        for (int r = 0; r < lanes; r++) {
+            double admitted = arrivals[r] - rejections[r];
+            int i = offset + r;
+            batch.avgWaitingTime[i] = totalWait[r] / admitted;
+            batch.avgSystemTime[i] = totalSystem[r] / admitted;
+            batch.utilizationRate[i] = busy[r] / horizon;
+            batch.avgQueueLength[i] = totalSystem[r] / horizon;
+            batch.probSystemFull[i] = fullTime[r] / horizon;
+            batch.probRejection[i] = rejections[r] / arrivals[r];
+        }
+    }
+}